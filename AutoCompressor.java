@@ -3,40 +3,63 @@ package org.examplez.autocompressor;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
-import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
-import org.bukkit.event.inventory.InventoryClickEvent;
-import org.bukkit.event.inventory.InventoryCloseEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
-import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.inventory.PlayerInventory;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.scheduler.BukkitRunnable;
+import org.examplez.autocompressor.core.CompressionEngine;
+import org.examplez.autocompressor.core.CompressionPlan;
+import org.examplez.autocompressor.core.InventorySnapshot;
+import org.examplez.autocompressor.core.OverflowPolicy;
+import org.examplez.autocompressor.core.RuleIndex;
+import org.examplez.autocompressor.core.RuleMask;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public final class AutoCompressor extends JavaPlugin implements Listener {
 
+    // Main inventory slots outputs can be placed in, the hotbar included
+    private static final int PLAYER_STORAGE_SIZE = 36;
+
     private FileConfiguration config;
     private File configFile;
-    private Map<UUID, CompressionRule> pendingRules = new HashMap<>();
-    private Map<String, CompressionRule> compressionRules = new HashMap<>();
+    // Swapped as a whole on every change, readers never see a half updated rule set
+    private final AtomicReference<RuleSet> ruleSet = new AtomicReference<>(RuleSet.EMPTY);
+    private ConfigWatcher configWatcher;
+    private PlayerRuleStore playerRules;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.PARTIAL;
+    private CompressionNotifier notifier;
+    private CompressionScheduler scheduler;
+    private PickupCompressor pickupCompressor;
+    private ContainerCompressor containerCompressor;
+    private NestedCompressor nestedCompressor;
+    private RuleScopes ruleScopes;
+    private final DirtyInventoryTracker dirtyTracker = new DirtyInventoryTracker();
+    private final SchedulerBackend backend = SchedulerBackend.detect(this);
+    private CompressionStats stats = new CompressionStats(false);
+    private MetricsServer metricsServer;
 
     @Override
     public void onEnable() {
         // Register events
         getServer().getPluginManager().registerEvents(this, this);
+        getServer().getPluginManager().registerEvents(new MenuListener(), this);
+        getServer().getPluginManager().registerEvents(dirtyTracker, this);
 
         // Create config if it doesn't exist
         loadConfig();
@@ -44,18 +67,42 @@ public final class AutoCompressor extends JavaPlugin implements Listener {
         // Load compression rules from config
         loadCompressionRules();
 
+        playerRules = new PlayerRuleStore(this, Math.max(1, config.getInt("players.cache-size", 1000)));
+        getServer().getPluginManager().registerEvents(playerRules, this);
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            playerRules.load(player);
+        }
+
+        ruleScopes = new RuleScopes(this, config.getBoolean("compression.rule-permissions", false),
+                config.getLong("compression.permission-recheck-seconds", 30));
+        getServer().getPluginManager().registerEvents(ruleScopes, this);
+
         // Register commands
         getCommand("autocompressor").setExecutor(new AutoCompressorCommand(this));
 
         // Start compression task
+        stats = new CompressionStats(config.getBoolean("metrics.track-allocations", true));
+        startMetricsServer();
         startCompressionTask();
+        startConfigWatcher();
 
         getLogger().info("AutoCompressor has been enabled!");
     }
 
     @Override
     public void onDisable() {
-        saveCompressionRules();
+        if (playerRules != null && !playerRules.shutdown(5, TimeUnit.SECONDS)) {
+            getLogger().warning("Timed out waiting for the player rules to be saved");
+        }
+        if (configWatcher != null) {
+            configWatcher.stop();
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
         getLogger().info("AutoCompressor has been disabled!");
     }
 
@@ -67,6 +114,14 @@ public final class AutoCompressor extends JavaPlugin implements Listener {
         }
 
         config = YamlConfiguration.loadConfiguration(configFile);
+
+        String overflow = config.getString("compression.overflow", "partial");
+        try {
+            overflowPolicy = OverflowPolicy.valueOf(overflow.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            getLogger().warning("Unknown compression.overflow '" + overflow + "', using partial");
+            overflowPolicy = OverflowPolicy.PARTIAL;
+        }
     }
 
     public void saveConfig() {
@@ -79,371 +134,276 @@ public final class AutoCompressor extends JavaPlugin implements Listener {
     }
 
     private void loadCompressionRules() {
-        ConfigurationSection rulesSection = config.getConfigurationSection("rules");
-        if (rulesSection == null) {
-            return;
+        RuleLoader loader = RuleLoader.read(config);
+        for (String error : loader.getErrors()) {
+            getLogger().severe("Skipping invalid compression rule: " + error);
+        }
+        if (!loader.isValid()) {
+            getLogger().severe("Fix config.yml and run /autocompressor reload. Until then the skipped rules stay " +
+                    "disabled.");
         }
 
-        for (String key : rulesSection.getKeys(false)) {
-            ConfigurationSection ruleSection = rulesSection.getConfigurationSection(key);
-            if (ruleSection != null) {
-                Material inputMaterial = Material.valueOf(ruleSection.getString("input.material"));
-                int inputAmount = ruleSection.getInt("input.amount");
-                Material outputMaterial = Material.valueOf(ruleSection.getString("output.material"));
-                int outputAmount = ruleSection.getInt("output.amount", 1);
+        setRules(new RuleSet(loader.getRules()));
+    }
 
-                CompressionRule rule = new CompressionRule(inputMaterial, inputAmount, outputMaterial, outputAmount);
-                compressionRules.put(key, rule);
-            }
-        }
+    public CompressionStats getStats() {
+        return stats;
     }
 
-    private void saveCompressionRules() {
-        config.set("rules", null); // Clear existing rules
+    public SchedulerBackend getBackend() {
+        return backend;
+    }
 
-        for (Map.Entry<String, CompressionRule> entry : compressionRules.entrySet()) {
-            String key = entry.getKey();
-            CompressionRule rule = entry.getValue();
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
 
-            config.set("rules." + key + ".input.material", rule.getInputMaterial().toString());
-            config.set("rules." + key + ".input.amount", rule.getInputAmount());
-            config.set("rules." + key + ".output.material", rule.getOutputMaterial().toString());
-            config.set("rules." + key + ".output.amount", rule.getOutputAmount());
-        }
+    public PlayerRuleStore getPlayerRules() {
+        return playerRules;
+    }
 
-        saveConfig();
+    // Any thread: the server rules currently in use, safe to keep using after they're replaced
+    public RuleSet getRules() {
+        return ruleSet.get();
     }
 
-    private void startCompressionTask() {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                for (Player player : Bukkit.getOnlinePlayers()) {
-                    processCompression(player);
-                }
-            }
-        }.runTaskTimer(this, 20L, 20L); // Run every second
+    // Null when container compression is turned off
+    public ContainerCompressor getContainerCompressor() {
+        return containerCompressor;
     }
 
-    private void processCompression(Player player) {
-        for (CompressionRule rule : compressionRules.values()) {
-            // Count matching items in player inventory
-            int matchingItems = 0;
-            for (ItemStack item : player.getInventory().getContents()) {
-                if (item != null && item.getType() == rule.getInputMaterial()) {
-                    matchingItems += item.getAmount();
-                }
-            }
+    // Player's thread: the server rules with the player's own rules on top
+    public RuleSet getRules(Player player) {
+        return playerRules.getRules(player);
+    }
 
-            // Check if enough items are available for compression
-            if (matchingItems >= rule.getInputAmount()) {
-                // Remove input items
-                int remainingToRemove = rule.getInputAmount();
-                ItemStack[] contents = player.getInventory().getContents();
-
-                for (int i = 0; i < contents.length && remainingToRemove > 0; i++) {
-                    ItemStack item = contents[i];
-                    if (item != null && item.getType() == rule.getInputMaterial()) {
-                        if (item.getAmount() <= remainingToRemove) {
-                            remainingToRemove -= item.getAmount();
-                            player.getInventory().setItem(i, null);
-                        } else {
-                            item.setAmount(item.getAmount() - remainingToRemove);
-                            remainingToRemove = 0;
-                        }
-                    }
-                }
+    public RuleScopes getRuleScopes() {
+        return ruleScopes;
+    }
 
-                // Add output item
-                ItemStack outputItem = new ItemStack(rule.getOutputMaterial(), rule.getOutputAmount());
-                player.getInventory().addItem(outputItem);
-                player.sendMessage(ChatColor.GREEN + "Auto-compressed " + rule.getInputAmount() + " " +
-                        formatMaterialName(rule.getInputMaterial()) + " into " +
-                        rule.getOutputAmount() + " " +
-                        formatMaterialName(rule.getOutputMaterial()) + "!");
-            }
+    // Player's thread: which of the player's rules apply to them right now
+    public RuleMask getRuleMask(Player player) {
+        return ruleScopes.mask(player, playerRules.getRules(player), getRules());
+    }
+
+    private void setRules(RuleSet rules) {
+        ruleSet.set(rules);
+        if (ruleScopes != null) {
+            // A reload is also when admins expect permission changes to show up
+            ruleScopes.invalidate();
+        }
+        for (String problem : rules.getIndex().problems()) {
+            getLogger().warning("Compression rule disabled: " + problem);
         }
     }
 
-    public void openMainMenu(Player player) {
-        Inventory menu = Bukkit.createInventory(null, 27, ChatColor.DARK_PURPLE + "AutoCompressor Menu");
+    // Reads config.yml again off the main thread. A file with any invalid rule is rejected as a whole
+    // and the current rules stay in place; only the rules are reloaded, other settings need a restart.
+    public void reloadRules(CommandSender sender) {
+        backend.runAsync(() -> {
+            String text;
+            try {
+                text = new String(Files.readAllBytes(configFile.toPath()), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                reportReload(sender, Collections.singletonList("Could not read " + configFile + ": " + e.getMessage()));
+                return;
+            }
 
-        // Create rule button
-        ItemStack createButton = createMenuItem(Material.EMERALD,
-                ChatColor.GREEN + "Create New Rule",
-                ChatColor.GRAY + "Click to create a new compression rule");
-        menu.setItem(11, createButton);
+            YamlConfiguration loaded = new YamlConfiguration();
+            try {
+                loaded.loadFromString(text);
+            } catch (InvalidConfigurationException e) {
+                reportReload(sender, Collections.singletonList("config.yml is not valid YAML: " + e.getMessage()));
+                return;
+            }
 
-        // List rules button
-        ItemStack listButton = createMenuItem(Material.BOOK,
-                ChatColor.AQUA + "List Existing Rules",
-                ChatColor.GRAY + "Click to view and manage your rules");
-        menu.setItem(15, listButton);
+            RuleLoader loader = RuleLoader.read(loaded);
+            if (!loader.isValid()) {
+                reportReload(sender, loader.getErrors());
+                return;
+            }
 
-        player.openInventory(menu);
+            // Compiling the indexes is the expensive part, do it here as well, the players' layered rules too
+            RuleSet rules = new RuleSet(loader.getRules());
+            playerRules.prepare(rules);
+            backend.runGlobal(() -> {
+                config = loaded;
+                setRules(rules);
+                String message = "Reloaded " + rules.getRules().size() + " compression rules";
+                getLogger().info(message);
+                if (sender instanceof Player) {
+                    sender.sendMessage(ChatColor.GREEN + message + ".");
+                }
+            });
+        });
     }
 
-    public void openCreateRuleMenu(Player player) {
-        Inventory menu = Bukkit.createInventory(null, 27, ChatColor.DARK_PURPLE + "Create Compression Rule");
-
-        // Set input item slot
-        ItemStack inputSlot = createMenuItem(Material.HOPPER,
-                ChatColor.YELLOW + "Set Input Item",
-                ChatColor.GRAY + "Click with an item to set input");
-        menu.setItem(11, inputSlot);
-
-        // Set output item slot
-        ItemStack outputSlot = createMenuItem(Material.CHEST,
-                ChatColor.YELLOW + "Set Output Item",
-                ChatColor.GRAY + "Click with an item to set output");
-        menu.setItem(15, outputSlot);
-
-        // Quantity adjustment
-        ItemStack decreaseButton = createMenuItem(Material.RED_CONCRETE,
-                ChatColor.RED + "Decrease Quantity",
-                ChatColor.GRAY + "Click to decrease required amount");
-        menu.setItem(3, decreaseButton);
-
-        ItemStack increaseButton = createMenuItem(Material.GREEN_CONCRETE,
-                ChatColor.GREEN + "Increase Quantity",
-                ChatColor.GRAY + "Click to increase required amount");
-        menu.setItem(5, increaseButton);
-
-        // Current quantity display (default: 9)
-        ItemStack quantityDisplay = createMenuItem(Material.PAPER,
-                ChatColor.GOLD + "Required Quantity: 9",
-                ChatColor.GRAY + "Number of input items needed");
-        menu.setItem(4, quantityDisplay);
-
-        // Save button
-        ItemStack saveButton = createMenuItem(Material.DIAMOND,
-                ChatColor.GREEN + "Save Rule",
-                ChatColor.GRAY + "Click to save this compression rule");
-        menu.setItem(22, saveButton);
-
-        // Cancel button
-        ItemStack cancelButton = createMenuItem(Material.BARRIER,
-                ChatColor.RED + "Cancel",
-                ChatColor.GRAY + "Click to cancel rule creation");
-        menu.setItem(26, cancelButton);
-
-        // Initialize pending rule
-        pendingRules.put(player.getUniqueId(), new CompressionRule(Material.COBBLESTONE, 9, Material.STONE, 1));
-
-        player.openInventory(menu);
+    private void reportReload(CommandSender sender, List<String> errors) {
+        backend.runGlobal(() -> {
+            getLogger().severe("Rejected config.yml, keeping the current compression rules:");
+            for (String error : errors) {
+                getLogger().severe("  " + error);
+            }
+            if (sender instanceof Player) {
+                sender.sendMessage(ChatColor.RED + "Rejected config.yml, the current rules were kept:");
+                for (String error : errors) {
+                    sender.sendMessage(ChatColor.GRAY + "- " + error);
+                }
+            }
+        });
     }
 
-    public void openRuleListMenu(Player player) {
-        Inventory menu = Bukkit.createInventory(null, 54, ChatColor.DARK_PURPLE + "Compression Rules");
+    private void startConfigWatcher() {
+        if (!config.getBoolean("reload.watch-file", false)) return;
 
-        int slot = 0;
-        for (Map.Entry<String, CompressionRule> entry : compressionRules.entrySet()) {
-            if (slot >= 45) break; // Limit to inventory size
+        try {
+            configWatcher = new ConfigWatcher(getLogger(), configFile.toPath(), () -> reloadRules(null));
+            configWatcher.start();
+        } catch (IOException e) {
+            getLogger().warning("Could not watch config.yml for changes, use /autocompressor reload: " + e.getMessage());
+        }
+    }
+
+    private void startMetricsServer() {
+        if (!config.getBoolean("metrics.prometheus.enabled", false)) return;
 
-            CompressionRule rule = entry.getValue();
+        String host = config.getString("metrics.prometheus.host", "127.0.0.1");
+        int port = config.getInt("metrics.prometheus.port", 9464);
+        try {
+            metricsServer = new MetricsServer(stats, host, port);
+            metricsServer.start();
+            getLogger().info("Serving metrics on http://" + host + ":" + port + "/metrics");
+        } catch (IOException e) {
+            getLogger().warning("Could not start the metrics endpoint on " + host + ":" + port + ": " + e.getMessage());
+        }
+    }
 
-            List<String> lore = new ArrayList<>();
-            lore.add(ChatColor.GRAY + "Input: " + ChatColor.WHITE + rule.getInputAmount() + " " + formatMaterialName(rule.getInputMaterial()));
-            lore.add(ChatColor.GRAY + "Output: " + ChatColor.WHITE + rule.getOutputAmount() + " " + formatMaterialName(rule.getOutputMaterial()));
-            lore.add("");
-            lore.add(ChatColor.RED + "Click to remove this rule");
+    private void startCompressionTask() {
+        NotificationMode notificationMode;
+        String mode = config.getString("notifications.mode", "summary");
+        try {
+            notificationMode = NotificationMode.valueOf(mode.toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            getLogger().warning("Unknown notifications.mode '" + mode + "', using summary");
+            notificationMode = NotificationMode.SUMMARY;
+        }
+        notifier = new CompressionNotifier(notificationMode);
+        getServer().getPluginManager().registerEvents(notifier, this);
+        long window = Math.max(1, config.getInt("notifications.window-ticks", 40));
+        backend.runGlobal(notifier, window, window);
+
+        if (config.getBoolean("compression.inline-pickup", false)) {
+            pickupCompressor = new PickupCompressor(this, notifier, dirtyTracker);
+            getServer().getPluginManager().registerEvents(pickupCompressor, this);
+            dirtyTracker.setTrackPickups(false);
+        }
 
-            ItemStack ruleItem = createMenuItem(rule.getOutputMaterial(),
-                    ChatColor.GOLD + "Compression Rule #" + (slot + 1),
-                    lore);
+        if (config.getBoolean("compression.nested.enabled", false)) {
+            nestedCompressor = new NestedCompressor(this, notifier, config.getInt("compression.nested.max-containers", 4));
+            getServer().getPluginManager().registerEvents(nestedCompressor, this);
+        }
 
-            menu.setItem(slot, ruleItem);
-            slot++;
+        if (config.getBoolean("containers.enabled", true)) {
+            containerCompressor = new ContainerCompressor(this, backend, config);
+            getServer().getPluginManager().registerEvents(containerCompressor, this);
+            if (!backend.isRegionThreaded()) {
+                // On Folia chunks can't be read from here, marked containers register as their chunks load
+                containerCompressor.registerLoadedChunks();
+                backend.runGlobal(containerCompressor, 1L, 1L);
+            }
         }
 
-        // Back button
-        ItemStack backButton = createMenuItem(Material.ARROW,
-                ChatColor.AQUA + "Back to Main Menu",
-                ChatColor.GRAY + "Return to the main menu");
-        menu.setItem(49, backButton);
+        if (backend.isRegionThreaded()) {
+            if (config.getString("compression.planning", "main").equalsIgnoreCase("async")) {
+                getLogger().info("compression.planning: async has no effect on Folia, passes already run on the region threads");
+            }
+            RegionCompressionScheduler regionScheduler = new RegionCompressionScheduler(this, backend, dirtyTracker, config);
+            getServer().getPluginManager().registerEvents(regionScheduler, this);
+            regionScheduler.start();
+            return;
+        }
 
-        player.openInventory(menu);
+        scheduler = new CompressionScheduler(this, dirtyTracker, stats, config);
+        getServer().getPluginManager().registerEvents(scheduler, this);
+        backend.runGlobal(scheduler, 1L, 1L); // Run every tick, within the configured budget
     }
 
-    private ItemStack createMenuItem(Material material, String name, String... lore) {
-        ItemStack item = new ItemStack(material);
-        ItemMeta meta = item.getItemMeta();
-        meta.setDisplayName(name);
-
-        List<String> loreList = new ArrayList<>();
-        for (String line : lore) {
-            loreList.add(line);
+    // Plans and applies a pass for one player in one go, on the thread owning the player. That's the main
+    // thread, except on Folia where every region has its own. Contents is what the player's inventory
+    // getContents() returned, it's left holding the compressed inventory for the nested pass.
+    CompressionPlan processCompression(Player player, ItemStack[] contents) {
+        InventorySnapshot snapshot = snapshotInventory(player, contents);
+        CompressionPlan plan = snapshot == null ? null : planCompression(snapshot);
+        if (plan == null || !applyCompression(player, plan, contents)) {
+            return null;
         }
+        return plan;
+    }
 
-        meta.setLore(loreList);
-        item.setItemMeta(meta);
-        return item;
+    // Player's thread: a primitive copy of the inventory that can be planned on any thread, null when no rule
+    // applies to the player at all
+    InventorySnapshot snapshotInventory(Player player, ItemStack[] contents) {
+        RuleMask mask = getRuleMask(player);
+        if (mask.isEmpty()) return null;
+
+        long start = System.nanoTime();
+        long allocated = stats.allocatedBytes();
+        InventorySnapshot snapshot = BukkitInventories.snapshot(mask.index(), contents, PLAYER_STORAGE_SIZE);
+        snapshot.restrictTo(mask);
+        stats.record(CompressionStats.Phase.SNAPSHOT, start, allocated);
+        stats.playerScanned();
+        return snapshot;
     }
 
-    private ItemStack createMenuItem(Material material, String name, List<String> lore) {
-        ItemStack item = new ItemStack(material);
-        ItemMeta meta = item.getItemMeta();
-        meta.setDisplayName(name);
-        meta.setLore(lore);
-        item.setItemMeta(meta);
-        return item;
+    // Any thread: only reads the snapshot and the immutable rule index it was taken with
+    CompressionPlan planCompression(InventorySnapshot snapshot) {
+        long start = System.nanoTime();
+        long allocated = stats.allocatedBytes();
+        CompressionPlan plan = CompressionEngine.compress(snapshot.index(), snapshot, overflowPolicy);
+        stats.record(CompressionStats.Phase.PLAN, start, allocated);
+        return plan;
     }
 
-    @EventHandler
-    public void onInventoryClick(InventoryClickEvent event) {
-        if (!(event.getWhoClicked() instanceof Player)) return;
-
-        Player player = (Player) event.getWhoClicked();
-        String title = event.getView().getTitle();
-
-        // Main menu handler
-        if (title.equals(ChatColor.DARK_PURPLE + "AutoCompressor Menu")) {
-            event.setCancelled(true);
-
-            if (event.getRawSlot() == 11) {
-                // Create rule button
-                openCreateRuleMenu(player);
-            } else if (event.getRawSlot() == 15) {
-                // List rules button
-                openRuleListMenu(player);
-            }
+    // Player's thread: applies a plan unless the rules or the inventory changed since its snapshot was taken.
+    // Contents is what the inventory holds now, changed along with it.
+    boolean applyCompression(Player player, CompressionPlan plan, ItemStack[] contents) {
+        long start = System.nanoTime();
+        long allocated = stats.allocatedBytes();
+        RuleIndex index = plan.index();
+        InventorySnapshot snapshot = plan.snapshot();
+        PlayerInventory inventory = player.getInventory();
+        if (index != playerRules.getRules(player).getIndex() || !BukkitInventories.matches(snapshot, contents)) {
+            return false;
         }
-        // Create rule menu handler
-        else if (title.equals(ChatColor.DARK_PURPLE + "Create Compression Rule")) {
-            CompressionRule pendingRule = pendingRules.get(player.getUniqueId());
-            if (pendingRule == null) {
-                event.setCancelled(true);
-                return;
-            }
 
-            // Handle create rule menu clicks
-            if (event.getRawSlot() < 27) {
-                event.setCancelled(true);
-
-                if (event.getRawSlot() == 11) {
-                    // Set input item
-                    if (event.getCursor() != null && event.getCursor().getType() != Material.AIR) {
-                        pendingRule.setInputMaterial(event.getCursor().getType());
-
-                        // Update display
-                        ItemStack inputDisplay = createMenuItem(event.getCursor().getType(),
-                                ChatColor.YELLOW + "Input: " + formatMaterialName(event.getCursor().getType()),
-                                ChatColor.GRAY + "Quantity: " + pendingRule.getInputAmount());
-                        event.getInventory().setItem(11, inputDisplay);
-                    }
-                } else if (event.getRawSlot() == 15) {
-                    // Set output item
-                    if (event.getCursor() != null && event.getCursor().getType() != Material.AIR) {
-                        pendingRule.setOutputMaterial(event.getCursor().getType());
-
-                        // Update display
-                        ItemStack outputDisplay = createMenuItem(event.getCursor().getType(),
-                                ChatColor.YELLOW + "Output: " + formatMaterialName(event.getCursor().getType()),
-                                ChatColor.GRAY + "Amount: " + pendingRule.getOutputAmount());
-                        event.getInventory().setItem(15, outputDisplay);
-                    }
-                } else if (event.getRawSlot() == 3) {
-                    // Decrease quantity
-                    if (pendingRule.getInputAmount() > 1) {
-                        pendingRule.setInputAmount(pendingRule.getInputAmount() - 1);
-
-                        // Update quantity display
-                        ItemStack quantityDisplay = createMenuItem(Material.PAPER,
-                                ChatColor.GOLD + "Required Quantity: " + pendingRule.getInputAmount(),
-                                ChatColor.GRAY + "Number of input items needed");
-                        event.getInventory().setItem(4, quantityDisplay);
-
-                        // Update input display if exists
-                        ItemStack inputItem = event.getInventory().getItem(11);
-                        if (inputItem != null && inputItem.getItemMeta().getDisplayName().startsWith(ChatColor.YELLOW + "Input:")) {
-                            ItemStack inputDisplay = createMenuItem(inputItem.getType(),
-                                    ChatColor.YELLOW + "Input: " + formatMaterialName(inputItem.getType()),
-                                    ChatColor.GRAY + "Quantity: " + pendingRule.getInputAmount());
-                            event.getInventory().setItem(11, inputDisplay);
-                        }
-                    }
-                } else if (event.getRawSlot() == 5) {
-                    // Increase quantity
-                    pendingRule.setInputAmount(pendingRule.getInputAmount() + 1);
-
-                    // Update quantity display
-                    ItemStack quantityDisplay = createMenuItem(Material.PAPER,
-                            ChatColor.GOLD + "Required Quantity: " + pendingRule.getInputAmount(),
-                            ChatColor.GRAY + "Number of input items needed");
-                    event.getInventory().setItem(4, quantityDisplay);
-
-                    // Update input display if exists
-                    ItemStack inputItem = event.getInventory().getItem(11);
-                    if (inputItem != null && inputItem.getItemMeta().getDisplayName().startsWith(ChatColor.YELLOW + "Input:")) {
-                        ItemStack inputDisplay = createMenuItem(inputItem.getType(),
-                                ChatColor.YELLOW + "Input: " + formatMaterialName(inputItem.getType()),
-                                ChatColor.GRAY + "Quantity: " + pendingRule.getInputAmount());
-                        event.getInventory().setItem(11, inputDisplay);
-                    }
-                } else if (event.getRawSlot() == 22) {
-                    // Save rule
-                    if (pendingRule.getInputMaterial() != null && pendingRule.getOutputMaterial() != null) {
-                        String ruleId = pendingRule.getInputMaterial().toString() + "_TO_" + pendingRule.getOutputMaterial().toString();
-                        compressionRules.put(ruleId, pendingRule);
-                        saveCompressionRules();
-
-                        player.sendMessage(ChatColor.GREEN + "Compression rule saved successfully!");
-                        player.closeInventory();
-                        openMainMenu(player);
-                    } else {
-                        player.sendMessage(ChatColor.RED + "Please set both input and output items!");
-                    }
-                } else if (event.getRawSlot() == 26) {
-                    // Cancel
-                    pendingRules.remove(player.getUniqueId());
-                    openMainMenu(player);
-                }
-            }
+        // Unless the overflow policy is drop the plan made sure everything fits, anything left over goes on the ground
+        for (ItemStack item : BukkitInventories.apply(inventory, contents, plan)) {
+            player.getWorld().dropItemNaturally(player.getLocation(), item);
         }
-        // Rule list menu handler
-        else if (title.equals(ChatColor.DARK_PURPLE + "Compression Rules")) {
-            event.setCancelled(true);
-
-            if (event.getRawSlot() < 45 && event.getCurrentItem() != null) {
-                // If clicking on a rule item (not the back button)
-                if (event.getCurrentItem().getItemMeta().getDisplayName().startsWith(ChatColor.GOLD + "Compression Rule #")) {
-                    // Find the rule and remove it
-                    int index = event.getRawSlot();
-                    int currentIndex = 0;
-
-                    String ruleToRemove = null;
-                    for (String ruleId : compressionRules.keySet()) {
-                        if (currentIndex == index) {
-                            ruleToRemove = ruleId;
-                            break;
-                        }
-                        currentIndex++;
-                    }
-
-                    if (ruleToRemove != null) {
-                        compressionRules.remove(ruleToRemove);
-                        saveCompressionRules();
-                        player.sendMessage(ChatColor.GREEN + "Compression rule removed successfully!");
-                        openRuleListMenu(player); // Refresh the menu
-                    }
-                }
-            } else if (event.getRawSlot() == 49) {
-                // Back button
-                openMainMenu(player);
-            }
+
+        notifier.record(player, plan);
+        if (pickupCompressor != null) {
+            pickupCompressor.invalidate(player.getUniqueId());
         }
+        stats.recordPlan(plan, false);
+        stats.record(CompressionStats.Phase.APPLY, start, allocated);
+        return true;
     }
 
-    @EventHandler
-    public void onInventoryClose(InventoryCloseEvent event) {
-        if (!(event.getPlayer() instanceof Player)) return;
+    // Player's thread, after the player's own pass and with the contents it left. Returns false when the
+    // budget ran out with containers left over, the scheduler gives the player another pass for those.
+    boolean compressNested(Player player, ItemStack[] contents) {
+        if (nestedCompressor == null) return true;
 
-        Player player = (Player) event.getPlayer();
-        String title = event.getView().getTitle();
+        long start = System.nanoTime();
+        long allocated = stats.allocatedBytes();
+        boolean done = nestedCompressor.compress(player, getRuleMask(player), contents);
+        stats.record(CompressionStats.Phase.NESTED, start, allocated);
+        return done;
+    }
 
-        if (title.equals(ChatColor.DARK_PURPLE + "Create Compression Rule")) {
-            pendingRules.remove(player.getUniqueId());
-        }
+    public void openMainMenu(Player player) {
+        new MainMenu(this, player).open();
     }
 
     @EventHandler
@@ -453,40 +413,29 @@ public final class AutoCompressor extends JavaPlugin implements Listener {
                 "Use /autocompressor to manage your compression rules.");
     }
 
-    private String formatMaterialName(Material material) {
-        String name = material.toString();
-        name = name.replace('_', ' ').toLowerCase();
-
-        StringBuilder formattedName = new StringBuilder();
-        boolean capitalizeNext = true;
-
-        for (char c : name.toCharArray()) {
-            if (capitalizeNext && Character.isAlphabetic(c)) {
-                formattedName.append(Character.toUpperCase(c));
-                capitalizeNext = false;
-            } else {
-                formattedName.append(c);
-                if (c == ' ') {
-                    capitalizeNext = true;
-                }
-            }
-        }
-
-        return formattedName.toString();
-    }
-
     // Inner class to represent a compression rule
     public static class CompressionRule {
         private Material inputMaterial;
         private int inputAmount;
         private Material outputMaterial;
         private int outputAmount;
+        // Null for rules on the plain material, which never take items with meta
+        private ItemMatch inputMatch;
+        // Worlds the rule applies in, null for every world
+        private List<String> worlds;
+        // Needed to use the rule, null when no permission is needed
+        private String permission;
 
         public CompressionRule(Material inputMaterial, int inputAmount, Material outputMaterial, int outputAmount) {
+            this(inputMaterial, inputAmount, outputMaterial, outputAmount, null);
+        }
+
+        public CompressionRule(Material inputMaterial, int inputAmount, Material outputMaterial, int outputAmount, ItemMatch inputMatch) {
             this.inputMaterial = inputMaterial;
             this.inputAmount = inputAmount;
             this.outputMaterial = outputMaterial;
             this.outputAmount = outputAmount;
+            this.inputMatch = inputMatch;
         }
 
         public Material getInputMaterial() {
@@ -520,5 +469,36 @@ public final class AutoCompressor extends JavaPlugin implements Listener {
         public void setOutputAmount(int outputAmount) {
             this.outputAmount = outputAmount;
         }
+
+        public ItemMatch getInputMatch() {
+            return inputMatch;
+        }
+
+        public void setInputMatch(ItemMatch inputMatch) {
+            this.inputMatch = inputMatch;
+        }
+
+        public List<String> getWorlds() {
+            return worlds;
+        }
+
+        public void setWorlds(List<String> worlds) {
+            this.worlds = worlds == null ? null : Collections.unmodifiableList(new ArrayList<>(worlds));
+        }
+
+        public String getPermission() {
+            return permission;
+        }
+
+        public void setPermission(String permission) {
+            this.permission = permission;
+        }
+
+        public CompressionRule copy() {
+            CompressionRule copy = new CompressionRule(inputMaterial, inputAmount, outputMaterial, outputAmount, inputMatch);
+            copy.worlds = worlds;
+            copy.permission = permission;
+            return copy;
+        }
     }
 }
\ No newline at end of file
@@ -1,10 +1,13 @@
 package org.examplez.autocompressor;
 
+import org.bukkit.block.Block;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.util.Map;
+
 public class AutoCompressorCommand implements CommandExecutor {
 
     private final AutoCompressor plugin;
@@ -15,6 +18,32 @@ public class AutoCompressorCommand implements CommandExecutor {
 
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length > 0 && args[0].equalsIgnoreCase("reload")) {
+            if (!sender.hasPermission("autocompressor.reload")) {
+                sender.sendMessage("§cYou don't have permission to use this command.");
+                return true;
+            }
+
+            sender.sendMessage("§7Reloading compression rules from config.yml...");
+            plugin.reloadRules(sender);
+            return true;
+        }
+
+        if (args.length > 0 && args[0].equalsIgnoreCase("stats")) {
+            if (!sender.hasPermission("autocompressor.stats")) {
+                sender.sendMessage("§cYou don't have permission to use this command.");
+                return true;
+            }
+
+            if (args.length > 1 && args[1].equalsIgnoreCase("reset")) {
+                plugin.getStats().reset();
+                sender.sendMessage("§aCompression stats reset.");
+            } else {
+                showStats(sender);
+            }
+            return true;
+        }
+
         if (!(sender instanceof Player)) {
             sender.sendMessage("This command can only be used by players.");
             return true;
@@ -22,6 +51,22 @@ public class AutoCompressorCommand implements CommandExecutor {
 
         Player player = (Player) sender;
 
+        if (args.length > 0 && args[0].equalsIgnoreCase("container")) {
+            toggleContainer(player);
+            return true;
+        }
+
+        if (args.length > 0 && args[0].equalsIgnoreCase("toggle")) {
+            if (!player.hasPermission("autocompressor.toggle")) {
+                player.sendMessage("§cYou don't have permission to use this command.");
+            } else if (plugin.getRuleScopes().toggle(player)) {
+                player.sendMessage("§aAuto-compression is now on.");
+            } else {
+                player.sendMessage("§eAuto-compression is now off, use /autocompressor toggle to turn it back on.");
+            }
+            return true;
+        }
+
         if (!player.hasPermission("autocompressor.use")) {
             player.sendMessage("§cYou don't have permission to use this command.");
             return true;
@@ -30,4 +75,60 @@ public class AutoCompressorCommand implements CommandExecutor {
         plugin.openMainMenu(player);
         return true;
     }
-}
\ No newline at end of file
+
+    private void showStats(CommandSender sender) {
+        CompressionStats stats = plugin.getStats();
+        long minutes = (System.currentTimeMillis() - stats.getSince()) / 60000;
+
+        sender.sendMessage("§6AutoCompressor stats §7(last " + minutes + " min, /autocompressor stats reset to clear)");
+        sender.sendMessage("§7Players: §f" + stats.getPlayersScanned() + " §7scanned, §f" + stats.getPlayersCompressed() +
+                " §7compressed, §f" + stats.getStalePlans() + " §7stale plans");
+        sender.sendMessage("§7Containers: §f" + stats.getContainersCompressed() + " §7compressed, §f" +
+                stats.getNestedCompressed() + " §7shulker boxes and bundles");
+
+        for (CompressionStats.Phase phase : CompressionStats.Phase.values()) {
+            LatencyHistogram timings = stats.getTimings(phase);
+            if (timings.getCount() == 0) continue;
+
+            String line = "§7" + phase.key() + ": §fp50 " + millis(timings.percentile(0.5)) +
+                    " §7/ §fp99 " + millis(timings.percentile(0.99)) +
+                    " §7/ §fmax " + millis(timings.getMax()) + " §7ms, " + timings.getCount() + "x";
+            if (stats.isTrackingAllocations()) {
+                line += ", ~" + stats.getAllocated(phase) / timings.getCount() + " B each";
+            }
+            sender.sendMessage(line);
+        }
+
+        for (Map.Entry<String, CompressionStats.RuleCounter> entry : stats.topRules(5)) {
+            sender.sendMessage("§7" + entry.getKey() + ": §f" + entry.getValue().getConsumed() + " §7in, §f" +
+                    entry.getValue().getProduced() + " §7out");
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1_000_000.0);
+    }
+
+    private void toggleContainer(Player player) {
+        if (!player.hasPermission("autocompressor.container")) {
+            player.sendMessage("§cYou don't have permission to use this command.");
+            return;
+        }
+
+        ContainerCompressor containers = plugin.getContainerCompressor();
+        if (containers == null) {
+            player.sendMessage("§cContainer compression is turned off on this server.");
+            return;
+        }
+
+        Block block = player.getTargetBlockExact(5);
+        Boolean marked = block == null ? null : containers.toggle(block);
+        if (marked == null) {
+            player.sendMessage("§cLook at a chest, hopper or other container to use this.");
+        } else if (marked) {
+            player.sendMessage("§aThis container now compresses its contents with the server rules.");
+        } else {
+            player.sendMessage("§eThis container no longer compresses its contents.");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.examplez.autocompressor.core.CompressionPlan;
+import org.examplez.autocompressor.core.InventorySnapshot;
+import org.examplez.autocompressor.core.RuleIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Turns Bukkit inventory contents into core snapshots
+public final class BukkitInventories {
+
+    private BukkitInventories() {
+    }
+
+    // Outputs are only placed in the first storageSize slots, the rest (armor, off hand) are only taken from
+    // Custom items only count for rules that ask for them, the index has to come from a RuleSet
+    public static InventorySnapshot snapshot(RuleIndex index, ItemStack[] contents, int storageSize) {
+        VariantMaterialTable materials = (VariantMaterialTable) index.materialTable();
+        InventorySnapshot snapshot = new InventorySnapshot(index, contents.length, storageSize);
+        for (int slot = 0; slot < contents.length; slot++) {
+            int key = materials.key(contents[slot]);
+            if (key < 0) continue;
+
+            // Outputs only stack onto items without meta, like Inventory#addItem
+            snapshot.add(slot, key, contents[slot].getAmount(), !materials.isVariant(key));
+        }
+        return snapshot;
+    }
+
+    // Whether the contents still look the way the snapshot saw them. Slots holding something no rule
+    // uses only need to stay occupied, a plan never touches them.
+    public static boolean matches(InventorySnapshot snapshot, ItemStack[] contents) {
+        if (contents.length != snapshot.size()) return false;
+
+        RuleIndex index = snapshot.index();
+        VariantMaterialTable materials = (VariantMaterialTable) index.materialTable();
+        for (int slot = 0; slot < contents.length; slot++) {
+            int key = materials.key(contents[slot]);
+            int id = key < 0 ? RuleIndex.EMPTY : index.denseId(key);
+            if (id != snapshot.material(slot)) return false;
+            if (id >= 0 && contents[slot].getAmount() != snapshot.amount(slot)) return false;
+        }
+        return true;
+    }
+
+    // Writes a plan into the inventory it was made for, contents being what getContents() returned.
+    // The plan already has the final layout of every slot, so only the slots that changed are written, once
+    // each, instead of clearing inputs and letting addItem search for room again.
+    // Returns the output that didn't fit, for the caller to drop.
+    public static List<ItemStack> apply(Inventory inventory, ItemStack[] contents, CompressionPlan plan) {
+        List<ItemStack> leftovers = apply(contents, plan);
+        for (int slot = 0; slot < contents.length; slot++) {
+            if (plan.isSlotChanged(slot)) {
+                inventory.setItem(slot, contents[slot]);
+            }
+        }
+        return leftovers;
+    }
+
+    // Same for contents that aren't backed by an inventory, like the items in a bundle. Only changes the array.
+    public static List<ItemStack> apply(ItemStack[] contents, CompressionPlan plan) {
+        RuleIndex index = plan.index();
+        InventorySnapshot snapshot = plan.snapshot();
+
+        for (int slot = 0; slot < contents.length; slot++) {
+            if (!plan.isSlotChanged(slot)) continue;
+
+            int material = plan.slotMaterial(slot);
+            int amount = plan.slotAmount(slot);
+            if (material == RuleIndex.EMPTY || amount == 0) {
+                contents[slot] = null;
+            } else if (material == snapshot.material(slot)) {
+                // Partly used up, keep the original stack and its meta
+                contents[slot].setAmount(amount);
+            } else {
+                contents[slot] = new ItemStack(BukkitMaterialTable.material(index.materialKey(material)), amount);
+            }
+        }
+
+        // Only OverflowPolicy.DROP leaves output that didn't fit
+        List<ItemStack> leftovers = new ArrayList<>();
+        for (int material = 0; material < index.materialCount(); material++) {
+            int amount = plan.overflow(material);
+            while (amount > 0) {
+                int stack = Math.min(amount, index.maxStackSize(material));
+                leftovers.add(new ItemStack(BukkitMaterialTable.material(index.materialKey(material)), stack));
+                amount -= stack;
+            }
+        }
+        return leftovers;
+    }
+}
@@ -0,0 +1,39 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.Material;
+import org.examplez.autocompressor.core.MaterialTable;
+
+// Paper's materials for the core, keyed by Material ordinal
+public final class BukkitMaterialTable implements MaterialTable {
+
+    public static final BukkitMaterialTable INSTANCE = new BukkitMaterialTable();
+
+    private static final Material[] MATERIALS = Material.values();
+
+    private BukkitMaterialTable() {
+    }
+
+    public static Material material(int key) {
+        return MATERIALS[key];
+    }
+
+    // Key of the material, -1 for null
+    public static int key(Material material) {
+        return material == null ? -1 : material.ordinal();
+    }
+
+    @Override
+    public int size() {
+        return MATERIALS.length;
+    }
+
+    @Override
+    public int maxStackSize(int key) {
+        return MATERIALS[key].getMaxStackSize();
+    }
+
+    @Override
+    public String name(int key) {
+        return MATERIALS[key].toString();
+    }
+}
@@ -0,0 +1,55 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+// Everything on the main thread, except async tasks
+public class BukkitSchedulerBackend implements SchedulerBackend {
+
+    private final Plugin plugin;
+
+    public BukkitSchedulerBackend(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean isRegionThreaded() {
+        return false;
+    }
+
+    @Override
+    public Task runGlobal(Runnable task, long delay, long period) {
+        return Bukkit.getScheduler().runTaskTimer(plugin, task, delay, period)::cancel;
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        Bukkit.getScheduler().runTask(plugin, task);
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, task);
+    }
+
+    @Override
+    public Task runForPlayer(Player player, Runnable task, long delay, long period) {
+        BukkitTask[] scheduled = new BukkitTask[1];
+        scheduled[0] = Bukkit.getScheduler().runTaskTimer(plugin, () -> {
+            if (player.isOnline()) {
+                task.run();
+            } else {
+                scheduled[0].cancel();
+            }
+        }, delay, period);
+        return scheduled[0]::cancel;
+    }
+
+    @Override
+    public void runAt(World world, int chunkX, int chunkZ, Runnable task, long delay) {
+        Bukkit.getScheduler().runTaskLater(plugin, task, delay);
+    }
+}
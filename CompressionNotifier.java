@@ -0,0 +1,142 @@
+package org.examplez.autocompressor;
+
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.examplez.autocompressor.core.CompressionPlan;
+import org.examplez.autocompressor.core.RuleIndex;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Collects what was compressed for each player and sends one message per window instead of one per compression.
+// Recording only adds numbers to arrays, the message itself is built once when the window closes.
+// Passes record from several region threads on Folia, so the summaries are guarded by the notifier.
+public class CompressionNotifier implements Runnable, Listener {
+
+    private final NotificationMode mode;
+    private Map<UUID, Summary> summaries = new HashMap<>();
+
+    public CompressionNotifier(NotificationMode mode) {
+        this.mode = mode;
+    }
+
+    public NotificationMode getMode() {
+        return mode;
+    }
+
+    public synchronized void record(Player player, CompressionPlan plan) {
+        if (mode == NotificationMode.OFF) return;
+
+        RuleIndex index = plan.index();
+        Summary summary = summaryFor(player, index);
+        for (int rule = 0; rule < index.ruleCount(); rule++) {
+            summary.batches[rule] += plan.batches(rule);
+        }
+        for (int material = 0; material < index.materialCount(); material++) {
+            summary.changes[material] += plan.change(material);
+        }
+    }
+
+    // A single rule applied outside a plan, like compression at pickup time
+    public synchronized void record(Player player, RuleIndex index, int rule, int batches) {
+        if (mode == NotificationMode.OFF) return;
+
+        Summary summary = summaryFor(player, index);
+        summary.batches[rule] += batches;
+        summary.changes[index.input(rule)] -= batches * index.inputAmount(rule);
+        summary.changes[index.output(rule)] += batches * index.outputAmount(rule);
+    }
+
+    private Summary summaryFor(Player player, RuleIndex index) {
+        Summary summary = summaries.get(player.getUniqueId());
+        if (summary != null && summary.index != index) {
+            // The rules were recompiled mid-window, send what was collected so far
+            send(player, summary);
+            summary = null;
+        }
+        if (summary == null) {
+            summary = new Summary(index);
+            summaries.put(player.getUniqueId(), summary);
+        }
+        return summary;
+    }
+
+    @Override
+    public void run() {
+        Map<UUID, Summary> closed;
+        synchronized (this) {
+            if (summaries.isEmpty()) return;
+
+            // Messages go out without holding up recording for the next window
+            closed = summaries;
+            summaries = new HashMap<>();
+        }
+
+        for (Map.Entry<UUID, Summary> entry : closed.entrySet()) {
+            Player player = Bukkit.getPlayer(entry.getKey());
+            if (player != null) {
+                send(player, entry.getValue());
+            }
+        }
+    }
+
+    private void send(Player player, Summary summary) {
+        RuleIndex index = summary.index;
+
+        if (mode == NotificationMode.VERBOSE) {
+            for (int rule = 0; rule < index.ruleCount(); rule++) {
+                int batches = summary.batches[rule];
+                if (batches == 0) continue;
+
+                player.sendMessage(ChatColor.GREEN + "Auto-compressed " + index.inputAmount(rule) * batches + " " +
+                        MaterialNames.of(index, index.input(rule)) + " into " +
+                        index.outputAmount(rule) * batches + " " +
+                        MaterialNames.of(index, index.output(rule)) + "!");
+            }
+            return;
+        }
+
+        // Net result, so the middle of a chain doesn't show up
+        StringBuilder consumed = new StringBuilder();
+        StringBuilder produced = new StringBuilder();
+        for (int material = 0; material < index.materialCount(); material++) {
+            int change = summary.changes[material];
+            if (change == 0) continue;
+
+            StringBuilder target = change < 0 ? consumed : produced;
+            if (target.length() > 0) target.append(", ");
+            target.append(Math.abs(change)).append(' ').append(MaterialNames.of(index, material));
+        }
+        if (consumed.length() == 0 || produced.length() == 0) return;
+
+        String message = ChatColor.GREEN + "Auto-compressed " + consumed + " into " + produced + "!";
+        if (mode == NotificationMode.ACTION_BAR) {
+            player.sendActionBar(LegacyComponentSerializer.legacySection().deserialize(message));
+        } else {
+            player.sendMessage(message);
+        }
+    }
+
+    @EventHandler
+    public synchronized void onPlayerQuit(PlayerQuitEvent event) {
+        summaries.remove(event.getPlayer().getUniqueId());
+    }
+
+    private static final class Summary {
+        private final RuleIndex index;
+        private final int[] batches;
+        private final int[] changes;
+
+        private Summary(RuleIndex index) {
+            this.index = index;
+            this.batches = new int[index.ruleCount()];
+            this.changes = new int[index.materialCount()];
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.examplez.autocompressor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// One compression pass for a player, from the snapshot to the applied plan. With async planning it only
+// covers applying the plan, the planning itself shows up in the plan timings.
+@Name("org.examplez.autocompressor.CompressionPass")
+@Label("Compression Pass")
+@Category("AutoCompressor")
+@Description("A compression pass over one player's inventory")
+public class CompressionPassEvent extends Event {
+
+    @Label("Player")
+    public String player;
+
+    @Label("Async")
+    @Description("Whether the plan was made on the planner pool")
+    public boolean async;
+
+    @Label("Outcome")
+    @Description("compressed, idle or stale")
+    public String outcome;
+
+    @Label("Items Consumed")
+    public int consumed;
+
+    @Label("Items Produced")
+    public int produced;
+}
@@ -0,0 +1,344 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.inventory.ItemStack;
+import org.examplez.autocompressor.core.CompressionPlan;
+import org.examplez.autocompressor.core.InventorySnapshot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.logging.Level;
+
+// Runs every tick and spreads compression passes over the ticks instead of doing every player at once.
+// Each tick gets a time budget which shrinks when the server is struggling, players that keep coming up
+// with nothing to compress are checked exponentially less often until their inventory really changes, and
+// a player is never processed more than once per interval.
+// With compression.planning set to async only the snapshot is taken on the main thread; the plan is made
+// on a worker pool and applied on a later tick, unless the inventory changed in the meantime.
+public class CompressionScheduler implements Runnable, Listener {
+
+    private static final double TARGET_MSPT = 50.0;
+    private static final double MIN_BUDGET_FACTOR = 0.1;
+    private static final int MSPT_SAMPLE_TICKS = 20;
+
+    private final AutoCompressor plugin;
+    private final DirtyInventoryTracker dirtyTracker;
+    private final CompressionStats stats;
+
+    private final boolean dirtyMode;
+    private final int fullSweepTicks;
+    private final int intervalTicks;
+    private final long tickBudgetNanos;
+    private final double msptThreshold;
+    private final int idlePasses;
+    private final int maxBackoffTicks;
+    private final ForkJoinPool planner;
+
+    private final Map<UUID, PlayerState> states = new HashMap<>();
+    private final Set<UUID> scheduled = new HashSet<>();
+    private final ArrayDeque<UUID> ready = new ArrayDeque<>();
+    // Players waiting for their next eligible tick, bucketed by that tick
+    private final ArrayDeque<UUID>[] waiting;
+    private final List<UUID> drained = new ArrayList<>();
+    // Players to look at again on the next tick for the scheduler's own reasons, not because anything changed
+    private final List<UUID> retries = new ArrayList<>();
+    // Players with a plan being made off the main thread, and the plans that are done
+    private final Set<UUID> planning = new HashSet<>();
+    private final ConcurrentLinkedQueue<PlannedPass> planned = new ConcurrentLinkedQueue<>();
+
+    private long tick = 0;
+    private long budgetNanos;
+
+    @SuppressWarnings("unchecked")
+    public CompressionScheduler(AutoCompressor plugin, DirtyInventoryTracker dirtyTracker, CompressionStats stats,
+                                ConfigurationSection config) {
+        this.plugin = plugin;
+        this.dirtyTracker = dirtyTracker;
+        this.stats = stats;
+
+        this.dirtyMode = !config.getString("compression.mode", "dirty").equalsIgnoreCase("full");
+        this.fullSweepTicks = config.getInt("compression.full-sweep-seconds", 30) * 20;
+        this.intervalTicks = Math.max(1, config.getInt("scheduler.interval-ticks", 20));
+        this.tickBudgetNanos = Math.max(1, config.getLong("scheduler.tick-budget-us", 2000)) * 1000L;
+        this.msptThreshold = Math.min(config.getDouble("scheduler.mspt-threshold", 40.0), TARGET_MSPT - 1);
+        this.idlePasses = Math.max(1, config.getInt("scheduler.idle-passes", 3));
+        this.maxBackoffTicks = Math.max(intervalTicks, config.getInt("scheduler.max-backoff-ticks", 200));
+
+        this.waiting = new ArrayDeque[maxBackoffTicks + 1];
+        for (int i = 0; i < waiting.length; i++) {
+            waiting[i] = new ArrayDeque<>();
+        }
+        this.budgetNanos = tickBudgetNanos;
+
+        if (config.getString("compression.planning", "main").equalsIgnoreCase("async")) {
+            int threads = config.getInt("compression.planner-threads", 0);
+            if (threads <= 0) {
+                threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            }
+            this.planner = new ForkJoinPool(threads, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("AutoCompressor-Planner-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, true);
+        } else {
+            this.planner = null;
+        }
+    }
+
+    // Stops the planner threads, plans still in progress are thrown away
+    public void shutdown() {
+        if (planner != null) {
+            planner.shutdownNow();
+        }
+    }
+
+    @Override
+    public void run() {
+        CompressionTickEvent event = new CompressionTickEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long allocated = stats.allocatedBytes();
+
+        int passes = runTick(start);
+
+        stats.record(CompressionStats.Phase.TICK, start, allocated);
+        event.end();
+        if (event.shouldCommit()) {
+            event.passes = passes;
+            event.queued = ready.size();
+            event.budget = budgetNanos;
+            event.commit();
+        }
+    }
+
+    // Returns the number of players processed and plans applied
+    private int runTick(long start) {
+        tick++;
+
+        // Full mode, or a periodic sweep to catch changes made by other plugins. Neither is a change of its
+        // own, so idle players stay backed off.
+        if ((!dirtyMode && tick % intervalTicks == 0) || (fullSweepTicks > 0 && tick % fullSweepTicks == 0)) {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                schedule(player.getUniqueId(), false);
+            }
+        }
+        if (tick % MSPT_SAMPLE_TICKS == 0) {
+            budgetNanos = currentBudget();
+        }
+
+        if (!dirtyTracker.isEmpty()) {
+            dirtyTracker.drainTo(drained);
+            for (UUID playerId : drained) {
+                schedule(playerId, true);
+            }
+            drained.clear();
+        }
+        if (!retries.isEmpty()) {
+            for (UUID playerId : retries) {
+                schedule(playerId, false);
+            }
+            retries.clear();
+        }
+        ready.addAll(waiting[bucket(tick)]);
+        waiting[bucket(tick)].clear();
+
+        // Always do at least one player so nobody starves when the budget is tiny
+        int passes = 0;
+        PlannedPass pass;
+        while ((pass = planned.poll()) != null) {
+            apply(pass);
+            passes++;
+            if (System.nanoTime() - start >= budgetNanos) return passes;
+        }
+        while (!ready.isEmpty()) {
+            process(ready.poll());
+            passes++;
+            if (System.nanoTime() - start >= budgetNanos) break;
+        }
+        return passes;
+    }
+
+    // A dirty mark means the inventory changed, so a backed off player is due again one interval after their
+    // last pass. Queuing them again for that leaves the old entry behind, process() skips it.
+    private void schedule(UUID playerId, boolean changed) {
+        PlayerState state = states.computeIfAbsent(playerId, id -> new PlayerState());
+        boolean reset = changed && state.idlePasses > 0;
+        if (reset) {
+            state.idlePasses = 0;
+            state.nextEligibleTick = Math.min(state.nextEligibleTick, state.lastPassTick + intervalTicks);
+        }
+        if (!scheduled.add(playerId) && !reset) return;
+
+        if (state.nextEligibleTick <= tick) {
+            ready.add(playerId);
+        } else {
+            waiting[bucket(state.nextEligibleTick)].add(playerId);
+        }
+    }
+
+    private void process(UUID playerId) {
+        if (!scheduled.contains(playerId)) return;
+        PlayerState state = states.get(playerId);
+        if (state != null && state.nextEligibleTick > tick) {
+            // An entry left behind by schedule(), the player is queued for later again
+            waiting[bucket(state.nextEligibleTick)].add(playerId);
+            return;
+        }
+
+        scheduled.remove(playerId);
+        Player player = Bukkit.getPlayer(playerId);
+        if (player == null) {
+            states.remove(playerId);
+            return;
+        }
+
+        if (planner == null) {
+            CompressionPassEvent event = new CompressionPassEvent();
+            event.begin();
+            ItemStack[] contents = player.getInventory().getContents();
+            CompressionPlan plan = plugin.processCompression(player, contents);
+            finish(playerId, plan, plugin.compressNested(player, contents));
+            commit(event, player, false, plan, plan != null ? "compressed" : "idle");
+            return;
+        }
+        if (planning.contains(playerId)) {
+            // Look again once the plan in progress has been applied
+            retries.add(playerId);
+            return;
+        }
+
+        InventorySnapshot snapshot = plugin.snapshotInventory(player, player.getInventory().getContents());
+        if (snapshot == null) {
+            finish(playerId, null, true);
+            return;
+        }
+        planning.add(playerId);
+        planner.execute(() -> plan(playerId, snapshot));
+    }
+
+    // Planner thread: always hands a pass back, or the player would stay in planning for good
+    private void plan(UUID playerId, InventorySnapshot snapshot) {
+        CompressionPlan plan = null;
+        try {
+            plan = plugin.planCompression(snapshot);
+        } catch (RuntimeException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to plan a compression pass for " + playerId, e);
+        } finally {
+            planned.add(new PlannedPass(playerId, plan));
+        }
+    }
+
+    private void apply(PlannedPass pass) {
+        planning.remove(pass.playerId);
+        Player player = Bukkit.getPlayer(pass.playerId);
+        if (player == null) {
+            states.remove(pass.playerId);
+            return;
+        }
+
+        CompressionPassEvent event = new CompressionPassEvent();
+        event.begin();
+        ItemStack[] contents = player.getInventory().getContents();
+        if (pass.plan != null && !plugin.applyCompression(player, pass.plan, contents)) {
+            // Stale, the inventory or the rules changed while planning
+            stats.stalePlan();
+            retries.add(pass.playerId);
+            commit(event, player, true, null, "stale");
+            return;
+        }
+        finish(pass.playerId, pass.plan, plugin.compressNested(player, contents));
+        commit(event, player, true, pass.plan, pass.plan != null ? "compressed" : "idle");
+    }
+
+    // Filling in the event costs a loop over the plan, so only when JFR is recording it
+    static void commit(CompressionPassEvent event, Player player, boolean async, CompressionPlan plan, String outcome) {
+        event.end();
+        if (!event.shouldCommit()) return;
+
+        event.player = player.getName();
+        event.async = async;
+        event.outcome = outcome;
+        if (plan != null) {
+            for (int material = 0; material < plan.index().materialCount(); material++) {
+                int change = plan.change(material);
+                if (change < 0) {
+                    event.consumed -= change;
+                } else {
+                    event.produced += change;
+                }
+            }
+        }
+        event.commit();
+    }
+
+    // Containers the nested pass had no budget for count as work left, not as an idle pass
+    private void finish(UUID playerId, CompressionPlan plan, boolean nestedDone) {
+        PlayerState state = states.computeIfAbsent(playerId, id -> new PlayerState());
+        state.lastPassTick = tick;
+        if (plan != null || !nestedDone) {
+            state.idlePasses = 0;
+            state.nextEligibleTick = tick + intervalTicks;
+            if (!nestedDone || plan.isLimited()) {
+                // Some output didn't fit or containers are left, try again once there may be room
+                retries.add(playerId);
+            }
+        } else {
+            state.idlePasses++;
+            int doublings = Math.min(state.idlePasses - idlePasses + 1, 16);
+            long delay = doublings > 0 ? (long) intervalTicks << doublings : intervalTicks;
+            state.nextEligibleTick = tick + Math.min(delay, maxBackoffTicks);
+        }
+    }
+
+    // Scales the budget down linearly between the MSPT threshold and a full 50ms tick
+    private long currentBudget() {
+        double mspt = Bukkit.getServer().getAverageTickTime();
+        if (mspt <= msptThreshold) {
+            return tickBudgetNanos;
+        }
+
+        double factor = Math.max(MIN_BUDGET_FACTOR, (TARGET_MSPT - mspt) / (TARGET_MSPT - msptThreshold));
+        return (long) (tickBudgetNanos * factor);
+    }
+
+    private int bucket(long eligibleTick) {
+        return (int) (eligibleTick % waiting.length);
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        // Anything still queued is skipped once it comes up
+        states.remove(event.getPlayer().getUniqueId());
+    }
+
+    private static final class PlannedPass {
+        private final UUID playerId;
+        private final CompressionPlan plan;
+
+        private PlannedPass(UUID playerId, CompressionPlan plan) {
+            this.playerId = playerId;
+            this.plan = plan;
+        }
+    }
+
+    private static final class PlayerState {
+        private long lastPassTick;
+        private long nextEligibleTick;
+        private int idlePasses;
+    }
+}
@@ -0,0 +1,190 @@
+package org.examplez.autocompressor;
+
+import org.examplez.autocompressor.core.CompressionPlan;
+import org.examplez.autocompressor.core.RuleIndex;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Timings and counters for everything the plugin does on a tick. Phases can be recorded from any thread,
+// the planner pool included. Reading them is for /autocompressor stats and the Prometheus endpoint, which
+// runs on its own thread, so nothing here is tied to the main thread.
+public class CompressionStats {
+
+    public enum Phase {
+        // Everything the scheduler did in one tick
+        TICK,
+        SNAPSHOT,
+        PLAN,
+        APPLY,
+        PICKUP,
+        CONTAINER,
+        // Shulker boxes and bundles in a player's inventory
+        NESTED;
+
+        public String key() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final Phase[] phases = Phase.values();
+    private final LatencyHistogram[] timings = new LatencyHistogram[phases.length];
+    private final LongAdder[] allocated = new LongAdder[phases.length];
+    private final com.sun.management.ThreadMXBean threads;
+
+    private final LongAdder playersScanned = new LongAdder();
+    private final LongAdder playersCompressed = new LongAdder();
+    private final LongAdder stalePlans = new LongAdder();
+    private final LongAdder containersCompressed = new LongAdder();
+    private final LongAdder nestedCompressed = new LongAdder();
+    private final Map<String, RuleCounter> rules = new ConcurrentHashMap<>();
+    private volatile long since = System.currentTimeMillis();
+
+    public CompressionStats(boolean trackAllocations) {
+        for (int i = 0; i < phases.length; i++) {
+            timings[i] = new LatencyHistogram();
+            allocated[i] = new LongAdder();
+        }
+
+        // Per thread allocation counters are a HotSpot extension, without them the estimates stay at 0
+        com.sun.management.ThreadMXBean bean = null;
+        if (trackAllocations && ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) {
+                bean = null;
+            }
+        }
+        this.threads = bean;
+    }
+
+    // Bytes the current thread allocated so far, taken before a phase and handed back to record
+    public long allocatedBytes() {
+        return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    public void record(Phase phase, long startNanos, long startAllocated) {
+        timings[phase.ordinal()].record(System.nanoTime() - startNanos);
+        if (threads != null) {
+            allocated[phase.ordinal()].add(threads.getCurrentThreadAllocatedBytes() - startAllocated);
+        }
+    }
+
+    public void playerScanned() {
+        playersScanned.increment();
+    }
+
+    public void stalePlan() {
+        stalePlans.increment();
+    }
+
+    // An applied plan, from a player's inventory or a container
+    public void recordPlan(CompressionPlan plan, boolean container) {
+        if (container) {
+            containersCompressed.increment();
+        } else {
+            playersCompressed.increment();
+        }
+        recordRules(plan);
+    }
+
+    // An applied plan inside a shulker box or bundle in a player's inventory
+    public void recordNestedPlan(CompressionPlan plan) {
+        nestedCompressed.increment();
+        recordRules(plan);
+    }
+
+    private void recordRules(CompressionPlan plan) {
+        RuleIndex index = plan.index();
+        for (int rule = 0; rule < index.ruleCount(); rule++) {
+            int batches = plan.batches(rule);
+            if (batches > 0) {
+                recordRule(index, rule, batches);
+            }
+        }
+    }
+
+    public void recordRule(RuleIndex index, int rule, int batches) {
+        RuleCounter counter = rules.computeIfAbsent(index.ruleId(rule), id -> new RuleCounter());
+        counter.consumed.add((long) batches * index.inputAmount(rule));
+        counter.produced.add((long) batches * index.outputAmount(rule));
+    }
+
+    public void reset() {
+        for (int i = 0; i < phases.length; i++) {
+            timings[i].reset();
+            allocated[i].reset();
+        }
+        playersScanned.reset();
+        playersCompressed.reset();
+        stalePlans.reset();
+        containersCompressed.reset();
+        nestedCompressed.reset();
+        rules.clear();
+        since = System.currentTimeMillis();
+    }
+
+    public boolean isTrackingAllocations() {
+        return threads != null;
+    }
+
+    public LatencyHistogram getTimings(Phase phase) {
+        return timings[phase.ordinal()];
+    }
+
+    public long getAllocated(Phase phase) {
+        return allocated[phase.ordinal()].sum();
+    }
+
+    public long getPlayersScanned() {
+        return playersScanned.sum();
+    }
+
+    public long getPlayersCompressed() {
+        return playersCompressed.sum();
+    }
+
+    public long getStalePlans() {
+        return stalePlans.sum();
+    }
+
+    public long getContainersCompressed() {
+        return containersCompressed.sum();
+    }
+
+    public long getNestedCompressed() {
+        return nestedCompressed.sum();
+    }
+
+    public long getSince() {
+        return since;
+    }
+
+    public Map<String, RuleCounter> getRules() {
+        return rules;
+    }
+
+    // Rules by items consumed, most first
+    public List<Map.Entry<String, RuleCounter>> topRules(int limit) {
+        List<Map.Entry<String, RuleCounter>> sorted = new ArrayList<>(rules.entrySet());
+        sorted.sort(Comparator.comparingLong((Map.Entry<String, RuleCounter> entry) -> entry.getValue().getConsumed()).reversed());
+        return sorted.size() > limit ? sorted.subList(0, limit) : sorted;
+    }
+
+    public static final class RuleCounter {
+        private final LongAdder consumed = new LongAdder();
+        private final LongAdder produced = new LongAdder();
+
+        public long getConsumed() {
+            return consumed.sum();
+        }
+
+        public long getProduced() {
+            return produced.sum();
+        }
+    }
+}
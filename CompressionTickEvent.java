@@ -0,0 +1,28 @@
+package org.examplez.autocompressor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Everything the compression scheduler did in one server tick
+@Name("org.examplez.autocompressor.CompressionTick")
+@Label("Compression Tick")
+@Category("AutoCompressor")
+@Description("The compression scheduler's share of a server tick")
+public class CompressionTickEvent extends Event {
+
+    @Label("Passes")
+    @Description("Players processed or plans applied this tick")
+    public int passes;
+
+    @Label("Queued")
+    @Description("Players still waiting when the tick ended")
+    public int queued;
+
+    @Label("Budget")
+    @Timespan(Timespan.NANOSECONDS)
+    public long budget;
+}
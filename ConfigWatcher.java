@@ -0,0 +1,74 @@
+package org.examplez.autocompressor;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Watches config.yml and runs a callback once it has stopped changing for a moment.
+// Editors often write a file in several steps, waiting for QUIET_MS avoids reading it half saved.
+public class ConfigWatcher {
+
+    private static final long QUIET_MS = 1000;
+
+    private final Logger logger;
+    private final Path file;
+    private final Runnable onChange;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    public ConfigWatcher(Logger logger, Path file, Runnable onChange) throws IOException {
+        this.logger = logger;
+        this.file = file;
+        this.onChange = onChange;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        // Saves replace the file through a rename, so watch the folder rather than the file
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        this.thread = new Thread(this::watch, "AutoCompressor-ConfigWatcher");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void stop() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not stop watching " + file, e);
+        }
+    }
+
+    private void watch() {
+        try {
+            boolean changed = false;
+            while (true) {
+                WatchKey key = changed ? watchService.poll(QUIET_MS, TimeUnit.MILLISECONDS) : watchService.take();
+                if (key == null) {
+                    // Quiet for long enough
+                    changed = false;
+                    onChange.run();
+                    continue;
+                }
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+}
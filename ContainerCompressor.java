@@ -0,0 +1,387 @@
+package org.examplez.autocompressor;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Container;
+import org.bukkit.block.DoubleChest;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.inventory.InventoryMoveItemEvent;
+import org.bukkit.event.inventory.InventoryPickupItemEvent;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.persistence.PersistentDataHolder;
+import org.bukkit.persistence.PersistentDataType;
+import org.examplez.autocompressor.core.CompressionPlan;
+import org.examplez.autocompressor.core.InventorySnapshot;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Compresses the contents of containers marked as compressors, with the server rules, when items arrive.
+// Marked containers are kept per world by chunk key, each chunk holding a small array of packed positions,
+// and follow their chunks as they load and unload. An item moving into any container costs a map lookup;
+// only containers in a chunk with a marked one are looked at more closely. A marked container is
+// compressed at most once per interval however many items arrive, so busy farms stay cheap.
+// On Folia each due container is a delayed task on its own region instead of an entry in the shared queue;
+// a chunk's position set is only ever changed by the thread owning that chunk. A world's chunk map is
+// changed in place and boxes no key: on Bukkit only the main thread touches it, on Folia every region
+// thread does, so there it sits behind a lock that is held for a single lookup.
+public class ContainerCompressor implements Runnable, Listener {
+
+    private final AutoCompressor plugin;
+    private final SchedulerBackend backend;
+    private final NamespacedKey markKey;
+    private final int intervalTicks;
+    private final int maxPerTick;
+
+    private final Map<UUID, Long2ObjectMap<PositionSet>> worlds = new ConcurrentHashMap<>();
+    // Containers waiting to be compressed and the tick they're due, in due order
+    private final LinkedHashMap<ContainerKey, Long> pending = new LinkedHashMap<>();
+    // On Folia, the containers with a task on their region
+    private final Set<ContainerKey> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger registered = new AtomicInteger();
+    private long tick;
+
+    public ContainerCompressor(AutoCompressor plugin, SchedulerBackend backend, ConfigurationSection config) {
+        this.plugin = plugin;
+        this.backend = backend;
+        this.markKey = new NamespacedKey(plugin, "compressor");
+        this.intervalTicks = Math.max(1, config.getInt("containers.interval-ticks", 10));
+        this.maxPerTick = Math.max(1, config.getInt("containers.max-per-tick", 20));
+    }
+
+    // Picks up the marked containers in chunks that were loaded before the plugin
+    public void registerLoadedChunks() {
+        for (World world : Bukkit.getWorlds()) {
+            for (Chunk chunk : world.getLoadedChunks()) {
+                scan(chunk);
+            }
+        }
+    }
+
+    // Marks or unmarks the container, returns whether it's a compressor now or null when it isn't a container
+    public Boolean toggle(Block block) {
+        BlockState state = block.getState();
+        if (!(state instanceof Container)) return null;
+
+        Container container = (Container) state;
+        boolean marked = !isMarked(container);
+        if (marked) {
+            container.getPersistentDataContainer().set(markKey, PersistentDataType.BYTE, (byte) 1);
+            add(block.getWorld(), block.getX(), block.getY(), block.getZ());
+        } else {
+            container.getPersistentDataContainer().remove(markKey);
+            remove(block.getWorld().getUID(), block.getX(), block.getY(), block.getZ());
+        }
+        container.update();
+        return marked;
+    }
+
+    @Override
+    public void run() {
+        tick++;
+        if (pending.isEmpty()) return;
+
+        int processed = 0;
+        Iterator<Map.Entry<ContainerKey, Long>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext() && processed < maxPerTick) {
+            Map.Entry<ContainerKey, Long> entry = iterator.next();
+            if (entry.getValue() > tick) break;
+
+            iterator.remove();
+            compress(entry.getKey());
+            processed++;
+        }
+    }
+
+    private void compress(ContainerKey key) {
+        long start = System.nanoTime();
+        long allocated = plugin.getStats().allocatedBytes();
+        compressContainer(key);
+        plugin.getStats().record(CompressionStats.Phase.CONTAINER, start, allocated);
+    }
+
+    private void compressContainer(ContainerKey key) {
+        World world = Bukkit.getWorld(key.world);
+        if (world == null || !world.isChunkLoaded(key.x >> 4, key.z >> 4)) return;
+
+        BlockState state = world.getBlockAt(key.x, key.y, key.z).getState(false);
+        if (!(state instanceof Container) || !isMarked((Container) state)) {
+            // Replaced without us seeing it, by an explosion or another plugin
+            remove(key.world, key.x, key.y, key.z);
+            return;
+        }
+
+        // A double chest half gives the inventory of the whole chest
+        Inventory inventory = ((Container) state).getInventory();
+        ItemStack[] contents = inventory.getContents();
+        RuleSet rules = plugin.getRules();
+        InventorySnapshot snapshot = BukkitInventories.snapshot(rules.getIndex(), contents, contents.length);
+        snapshot.restrictTo(plugin.getRuleScopes().mask(world, rules));
+        CompressionPlan plan = plugin.planCompression(snapshot);
+        if (plan == null) return;
+
+        Location dropLocation = state.getLocation().add(0.5, 1.0, 0.5);
+        for (ItemStack item : BukkitInventories.apply(inventory, contents, plan)) {
+            world.dropItemNaturally(dropLocation, item);
+        }
+        plugin.getStats().recordPlan(plan, true);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryMoveItem(InventoryMoveItemEvent event) {
+        itemsArrived(event.getDestination());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryPickupItem(InventoryPickupItemEvent event) {
+        itemsArrived(event.getInventory());
+    }
+
+    private void itemsArrived(Inventory inventory) {
+        if (registered.get() == 0 || inventory.getType() == InventoryType.PLAYER) return;
+
+        Location location = inventory.getLocation();
+        if (location == null || location.getWorld() == null) return;
+        Long2ObjectMap<PositionSet> chunks = worlds.get(location.getWorld().getUID());
+        if (chunks == null) return;
+
+        // A double chest reports the middle between its halves, which can sit on a chunk border
+        int minChunkX = (int) Math.floor(location.getX() - 0.5) >> 4;
+        int maxChunkX = (int) Math.floor(location.getX() + 0.5) >> 4;
+        int minChunkZ = (int) Math.floor(location.getZ() - 0.5) >> 4;
+        int maxChunkZ = (int) Math.floor(location.getZ() + 0.5) >> 4;
+        boolean candidate = false;
+        for (int chunkX = minChunkX; chunkX <= maxChunkX && !candidate; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ && !candidate; chunkZ++) {
+                candidate = chunks.containsKey(Chunk.getChunkKey(chunkX, chunkZ));
+            }
+        }
+        if (!candidate) return;
+
+        // Only now resolve the holder, that's the expensive part
+        InventoryHolder holder = inventory.getHolder(false);
+        if (holder instanceof DoubleChest) {
+            queue(((DoubleChest) holder).getLeftSide());
+            queue(((DoubleChest) holder).getRightSide());
+        } else {
+            queue(holder);
+        }
+    }
+
+    private void queue(InventoryHolder holder) {
+        if (!(holder instanceof BlockState)) return;
+
+        Location location = ((BlockState) holder).getLocation();
+        UUID world = location.getWorld().getUID();
+        int x = location.getBlockX();
+        int y = location.getBlockY();
+        int z = location.getBlockZ();
+        if (!contains(world, x, y, z)) return;
+
+        ContainerKey key = new ContainerKey(world, x, y, z);
+        if (!backend.isRegionThreaded()) {
+            pending.putIfAbsent(key, tick + intervalTicks);
+        } else if (queued.add(key)) {
+            backend.runAt(location.getWorld(), x >> 4, z >> 4, () -> {
+                queued.remove(key);
+                compress(key);
+            }, intervalTicks);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        scan(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        Chunk chunk = event.getChunk();
+        Long2ObjectMap<PositionSet> chunks = worlds.get(chunk.getWorld().getUID());
+        if (chunks == null || !chunks.containsKey(chunk.getChunkKey())) return;
+
+        PositionSet positions = removeChunk(chunk.getWorld().getUID(), chunk.getChunkKey());
+        if (positions != null) {
+            registered.addAndGet(-positions.size);
+        }
+        // Anything still pending is dropped when it comes up, the chunk isn't loaded anymore
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        Long2ObjectMap<PositionSet> chunks = worlds.remove(event.getWorld().getUID());
+        if (chunks == null) return;
+
+        synchronized (chunks) {
+            for (PositionSet positions : chunks.values()) {
+                registered.addAndGet(-positions.size);
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        if (registered.get() == 0) return;
+
+        Block block = event.getBlock();
+        remove(block.getWorld().getUID(), block.getX(), block.getY(), block.getZ());
+    }
+
+    private void scan(Chunk chunk) {
+        // Without snapshots, we only read the marker
+        for (BlockState state : chunk.getTileEntities(false)) {
+            if (state instanceof Container && isMarked((Container) state)) {
+                add(chunk.getWorld(), state.getLocation().getBlockX(), state.getLocation().getBlockY(), state.getLocation().getBlockZ());
+            }
+        }
+    }
+
+    private boolean isMarked(PersistentDataHolder holder) {
+        return holder.getPersistentDataContainer().has(markKey, PersistentDataType.BYTE);
+    }
+
+    private void add(World world, int x, int y, int z) {
+        long chunkKey = Chunk.getChunkKey(x >> 4, z >> 4);
+        Long2ObjectMap<PositionSet> chunks = worlds.get(world.getUID());
+        PositionSet positions = chunks == null ? null : chunks.get(chunkKey);
+        if (positions == null) {
+            positions = addChunk(world.getUID(), chunkKey);
+        }
+        if (positions.add(pack(x, y, z))) {
+            registered.incrementAndGet();
+        }
+    }
+
+    private void remove(UUID world, int x, int y, int z) {
+        Long2ObjectMap<PositionSet> chunks = worlds.get(world);
+        if (chunks == null) return;
+
+        long chunkKey = Chunk.getChunkKey(x >> 4, z >> 4);
+        PositionSet positions = chunks.get(chunkKey);
+        if (positions == null || !positions.remove(pack(x, y, z))) return;
+
+        registered.decrementAndGet();
+        if (positions.size == 0) {
+            removeChunk(world, chunkKey);
+        }
+    }
+
+    private boolean contains(UUID world, int x, int y, int z) {
+        Long2ObjectMap<PositionSet> chunks = worlds.get(world);
+        if (chunks == null) return false;
+
+        PositionSet positions = chunks.get(Chunk.getChunkKey(x >> 4, z >> 4));
+        return positions != null && positions.contains(pack(x, y, z));
+    }
+
+    // Only the thread owning the chunk adds its position set, so nobody else can add it in between
+    private PositionSet addChunk(UUID world, long chunkKey) {
+        Long2ObjectMap<PositionSet> chunks = worlds.computeIfAbsent(world, id -> newChunkMap());
+        PositionSet positions = chunks.get(chunkKey);
+        if (positions == null) {
+            positions = new PositionSet();
+            chunks.put(chunkKey, positions);
+        }
+        return positions;
+    }
+
+    // Returns the removed chunk's position set, or null when it wasn't there
+    private PositionSet removeChunk(UUID world, long chunkKey) {
+        Long2ObjectMap<PositionSet> chunks = worlds.get(world);
+        return chunks == null ? null : chunks.remove(chunkKey);
+    }
+
+    private Long2ObjectMap<PositionSet> newChunkMap() {
+        Long2ObjectMap<PositionSet> chunks = new Long2ObjectOpenHashMap<>();
+        return backend.isRegionThreaded() ? Long2ObjectMaps.synchronize(chunks) : chunks;
+    }
+
+    // Position within its chunk: y in the high bits, then x and z in four bits each
+    private static int pack(int x, int y, int z) {
+        return (y << 8) | ((x & 15) << 4) | (z & 15);
+    }
+
+    // A chunk rarely holds more than a few compressors, a plain array beats any hashing here
+    private static final class PositionSet {
+        private int[] positions = new int[4];
+        private int size;
+
+        private boolean contains(int position) {
+            for (int i = 0; i < size; i++) {
+                if (positions[i] == position) return true;
+            }
+            return false;
+        }
+
+        private boolean add(int position) {
+            if (contains(position)) return false;
+
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+            return true;
+        }
+
+        private boolean remove(int position) {
+            for (int i = 0; i < size; i++) {
+                if (positions[i] == position) {
+                    positions[i] = positions[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class ContainerKey {
+        private final UUID world;
+        private final int x;
+        private final int y;
+        private final int z;
+
+        private ContainerKey(UUID world, int x, int y, int z) {
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ContainerKey)) return false;
+
+            ContainerKey key = (ContainerKey) other;
+            return x == key.x && y == key.y && z == key.z && world.equals(key.world);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * world.hashCode() + x) + y) + z;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The rule being created lives in the menu, closing the menu throws it away
+public class CreateRuleMenu extends Menu {
+
+    private final AutoCompressor.CompressionRule pendingRule =
+            new AutoCompressor.CompressionRule(Material.COBBLESTONE, 9, Material.STONE, 1);
+    private ItemStack inputItem = MenuItems.SET_INPUT;
+    private ItemStack outputItem = MenuItems.SET_OUTPUT;
+    private ItemStack quantityItem;
+    private boolean inputSet;
+
+    public CreateRuleMenu(AutoCompressor plugin, Player player) {
+        super(plugin, player, 27, ChatColor.DARK_PURPLE + "Create Compression Rule");
+        updateQuantity();
+    }
+
+    @Override
+    protected void render() {
+        set(3, MenuItems.DECREASE);
+        set(4, quantityItem);
+        set(5, MenuItems.INCREASE);
+        set(11, inputItem);
+        set(15, outputItem);
+        set(22, MenuItems.SAVE);
+        set(26, MenuItems.CANCEL);
+    }
+
+    @Override
+    public void click(InventoryClickEvent event) {
+        // Clicks in the player's own inventory pass through so they can pick up items
+        if (event.getRawSlot() >= size()) return;
+
+        event.setCancelled(true);
+        ItemStack cursor = event.getCursor();
+        boolean hasCursor = cursor != null && cursor.getType() != Material.AIR;
+
+        switch (event.getRawSlot()) {
+            case 11:
+                if (hasCursor) {
+                    // An item with meta makes a rule for custom items with everything this one has
+                    ItemMatch match = cursor.hasItemMeta() ? ItemMatch.of(cursor.getItemMeta()) : null;
+                    if (match != null && match.isEmpty()) {
+                        // Meta without a name, model data, data keys or enchantments, nothing to tell it apart by
+                        player.sendMessage(ChatColor.YELLOW + "This item has nothing a rule can match on, " +
+                                "the rule is for plain " + MaterialNames.of(cursor.getType()) + " and skips items like this one.");
+                        match = null;
+                    }
+                    pendingRule.setInputMaterial(cursor.getType());
+                    pendingRule.setInputMatch(match);
+                    inputSet = true;
+                    updateInput();
+                }
+                break;
+            case 15:
+                if (hasCursor) {
+                    pendingRule.setOutputMaterial(cursor.getType());
+                    outputItem = MenuItems.create(cursor.getType(),
+                            ChatColor.YELLOW + "Output: " + MaterialNames.of(cursor.getType()),
+                            ChatColor.GRAY + "Amount: " + pendingRule.getOutputAmount());
+                }
+                break;
+            case 3:
+                if (pendingRule.getInputAmount() > 1) {
+                    pendingRule.setInputAmount(pendingRule.getInputAmount() - 1);
+                    updateQuantity();
+                    updateInput();
+                }
+                break;
+            case 5:
+                pendingRule.setInputAmount(pendingRule.getInputAmount() + 1);
+                updateQuantity();
+                updateInput();
+                break;
+            case 22:
+                save();
+                return;
+            case 26:
+                new MainMenu(plugin, player).open();
+                return;
+            default:
+                return;
+        }
+        render();
+    }
+
+    private void save() {
+        PlayerRuleStore playerRules = plugin.getPlayerRules();
+        RuleSet ownRules = playerRules.getOwnRules(player);
+        if (ownRules == null) {
+            player.sendMessage(ChatColor.RED + "Your rules are still loading, try again in a moment.");
+            return;
+        }
+
+        String ruleId = pendingRule.getInputMaterial().toString() + "_TO_" + pendingRule.getOutputMaterial().toString();
+        ItemMatch match = pendingRule.getInputMatch();
+        if (match != null) {
+            // Custom variants of the same material need their own ids
+            ruleId += "_" + Long.toHexString(match.fingerprint(pendingRule.getInputMaterial())).toUpperCase();
+        }
+        if (plugin.getRules().getRules().containsKey(ruleId)) {
+            // It would never be used, server rules keep their ids
+            player.sendMessage(ChatColor.RED + "The server already has a rule " + ruleId + ", yours would never be used.");
+            return;
+        }
+        playerRules.setOwnRules(player, ownRules.with(ruleId, pendingRule));
+
+        player.sendMessage(ChatColor.GREEN + "Compression rule saved successfully!");
+        if (playerRules.getRules(player).getIndex().ruleIndex(ruleId) < 0) {
+            player.sendMessage(ChatColor.RED + "This rule creates a compression cycle and stays disabled until that is fixed.");
+        }
+        new MainMenu(plugin, player).open();
+    }
+
+    private void updateQuantity() {
+        quantityItem = MenuItems.create(Material.PAPER,
+                ChatColor.GOLD + "Required Quantity: " + pendingRule.getInputAmount(),
+                ChatColor.GRAY + "Number of input items needed");
+    }
+
+    private void updateInput() {
+        if (!inputSet) return;
+
+        List<String> lore = new ArrayList<>();
+        lore.add(ChatColor.GRAY + "Quantity: " + pendingRule.getInputAmount());
+        if (pendingRule.getInputMatch() != null) {
+            lore.add(ChatColor.GRAY + "Only: " + ChatColor.WHITE + pendingRule.getInputMatch().describe());
+        }
+        inputItem = MenuItems.create(pendingRule.getInputMaterial(),
+                ChatColor.YELLOW + "Input: " + MaterialNames.of(pendingRule.getInputMaterial()), lore);
+    }
+}
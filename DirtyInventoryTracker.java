@@ -0,0 +1,115 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockDropItemEvent;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.inventory.InventoryMoveItemEvent;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Keeps track of players whose inventory may have changed since their last compression pass.
+// Concurrent because on Folia players are marked and taken on their own region threads.
+public class DirtyInventoryTracker implements Listener {
+
+    private final Set<UUID> dirtyPlayers = ConcurrentHashMap.newKeySet();
+    private volatile boolean trackPickups = true;
+
+    public void markDirty(HumanEntity entity) {
+        dirtyPlayers.add(entity.getUniqueId());
+    }
+
+    public void markDirty(UUID playerId) {
+        dirtyPlayers.add(playerId);
+    }
+
+    public void forget(UUID playerId) {
+        dirtyPlayers.remove(playerId);
+    }
+
+    // Clears the player, returns whether they were dirty
+    public boolean take(UUID playerId) {
+        return dirtyPlayers.remove(playerId);
+    }
+
+    // Off when pickups are compressed as they happen, they don't need a pass afterwards
+    public void setTrackPickups(boolean trackPickups) {
+        this.trackPickups = trackPickups;
+    }
+
+    public boolean isEmpty() {
+        return dirtyPlayers.isEmpty();
+    }
+
+    // Moves every dirty player into the given collection and clears the set
+    public void drainTo(Collection<UUID> target) {
+        for (UUID playerId : dirtyPlayers) {
+            if (dirtyPlayers.remove(playerId)) {
+                target.add(playerId);
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityPickupItem(EntityPickupItemEvent event) {
+        if (trackPickups && event.getEntity() instanceof Player) {
+            markDirty((Player) event.getEntity());
+        }
+    }
+
+    // Also covers CraftItemEvent, which shares the InventoryClickEvent handler list
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryClick(InventoryClickEvent event) {
+        markDirty(event.getWhoClicked());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryDrag(InventoryDragEvent event) {
+        markDirty(event.getWhoClicked());
+    }
+
+    // Drops normally reach the player through a pickup, but some plugins insert them directly
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockDropItem(BlockDropItemEvent event) {
+        markDirty(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryMoveItem(InventoryMoveItemEvent event) {
+        markIfPlayerInventory(event.getDestination());
+        markIfPlayerInventory(event.getSource());
+    }
+
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        markDirty(event.getPlayer());
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        forget(event.getPlayer().getUniqueId());
+    }
+
+    private void markIfPlayerInventory(Inventory inventory) {
+        // Check the type first, resolving the holder of a block inventory is expensive
+        if (inventory.getType() != InventoryType.PLAYER) return;
+
+        InventoryHolder holder = inventory.getHolder(false);
+        if (holder instanceof HumanEntity) {
+            markDirty((HumanEntity) holder);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.examplez.autocompressor;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+// Folia's region schedulers. Their delays start at one tick, so shorter ones are rounded up.
+public class FoliaSchedulerBackend implements SchedulerBackend {
+
+    private final Plugin plugin;
+
+    public FoliaSchedulerBackend(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean isRegionThreaded() {
+        return true;
+    }
+
+    @Override
+    public Task runGlobal(Runnable task, long delay, long period) {
+        return Bukkit.getServer().getGlobalRegionScheduler()
+                .runAtFixedRate(plugin, scheduled -> task.run(), Math.max(1, delay), Math.max(1, period))::cancel;
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        Bukkit.getServer().getGlobalRegionScheduler().execute(plugin, task);
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        Bukkit.getServer().getAsyncScheduler().runNow(plugin, scheduled -> task.run());
+    }
+
+    @Override
+    public Task runForPlayer(Player player, Runnable task, long delay, long period) {
+        // Null when the player is already gone
+        ScheduledTask scheduled = player.getScheduler()
+                .runAtFixedRate(plugin, running -> task.run(), null, Math.max(1, delay), Math.max(1, period));
+        return scheduled == null ? () -> { } : scheduled::cancel;
+    }
+
+    @Override
+    public void runAt(World world, int chunkX, int chunkZ, Runnable task, long delay) {
+        if (delay <= 0) {
+            Bukkit.getServer().getRegionScheduler().execute(plugin, world, chunkX, chunkZ, task);
+        } else {
+            Bukkit.getServer().getRegionScheduler().runDelayed(plugin, world, chunkX, chunkZ, scheduled -> task.run(), delay);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.persistence.PersistentDataContainer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+// What a custom input item looks like besides its material: display name, custom model data, persistent
+// data keys and enchantments. An item matches when it has at least the parts that are set: the same name,
+// the same model data, every data key and every enchantment at that level. Anything else on the item, like
+// lore or other data, doesn't matter. The 64-bit fingerprint over all four parts tells matches apart.
+public final class ItemMatch {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String name;
+    private final Integer customModelData;
+    private final List<String> dataKeys;
+    private final Map<String, Integer> enchantments;
+    // Resolved once, matching runs for every custom item in every pass
+    private final NamespacedKey[] dataKeyObjects;
+    private final Enchantment[] enchantmentObjects;
+    private final int[] enchantmentLevels;
+
+    public ItemMatch(String name, Integer customModelData, Collection<String> dataKeys, Map<String, Integer> enchantments) {
+        this.name = name;
+        this.customModelData = customModelData;
+
+        List<String> keys = new ArrayList<>();
+        for (String key : dataKeys) {
+            keys.add(namespaced(key));
+        }
+        Collections.sort(keys);
+        this.dataKeys = Collections.unmodifiableList(keys);
+
+        Map<String, Integer> levels = new TreeMap<>();
+        for (Map.Entry<String, Integer> entry : enchantments.entrySet()) {
+            levels.put(namespaced(entry.getKey()), entry.getValue());
+        }
+        this.enchantments = Collections.unmodifiableMap(levels);
+
+        this.dataKeyObjects = new NamespacedKey[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            dataKeyObjects[i] = NamespacedKey.fromString(keys.get(i));
+        }
+        this.enchantmentObjects = new Enchantment[levels.size()];
+        this.enchantmentLevels = new int[levels.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : levels.entrySet()) {
+            NamespacedKey key = NamespacedKey.fromString(entry.getKey());
+            enchantmentObjects[i] = key == null ? null : Enchantment.getByKey(key);
+            enchantmentLevels[i++] = entry.getValue();
+        }
+    }
+
+    // The match for exactly this item, null for items without meta
+    public static ItemMatch of(ItemMeta meta) {
+        if (meta == null) return null;
+
+        List<String> keys = new ArrayList<>();
+        for (NamespacedKey key : meta.getPersistentDataContainer().getKeys()) {
+            keys.add(key.asString());
+        }
+        Map<String, Integer> levels = new TreeMap<>();
+        if (meta.hasEnchants()) {
+            for (Map.Entry<Enchantment, Integer> entry : meta.getEnchants().entrySet()) {
+                levels.put(entry.getKey().getKey().asString(), entry.getValue());
+            }
+        }
+        return new ItemMatch(meta.hasDisplayName() ? meta.getDisplayName() : null,
+                meta.hasCustomModelData() ? meta.getCustomModelData() : null, keys, levels);
+    }
+
+    // Whether the item has everything this asks for
+    public boolean matches(ItemMeta meta) {
+        if (name != null && (!meta.hasDisplayName() || !name.equals(meta.getDisplayName()))) return false;
+        if (customModelData != null && (!meta.hasCustomModelData() || meta.getCustomModelData() != customModelData)) {
+            return false;
+        }
+
+        PersistentDataContainer data = meta.getPersistentDataContainer();
+        for (NamespacedKey key : dataKeyObjects) {
+            if (key == null || !data.has(key)) return false;
+        }
+        for (int i = 0; i < enchantmentObjects.length; i++) {
+            if (enchantmentObjects[i] == null || meta.getEnchantLevel(enchantmentObjects[i]) != enchantmentLevels[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Nothing set, so it would take every item of the material that has any meta at all
+    public boolean isEmpty() {
+        return specificity() == 0;
+    }
+
+    // How many parts are set, an item fitting several matches goes to the one asking for the most
+    public int specificity() {
+        return (name == null ? 0 : 1) + (customModelData == null ? 0 : 1) + dataKeys.size() + enchantments.size();
+    }
+
+    // FNV-1a over the material and every part, in a fixed order
+    public long fingerprint(Material material) {
+        long hash = mix(FNV_OFFSET, material.ordinal());
+        hash = mix(hash, name == null ? "" : name);
+        hash = mix(hash, customModelData == null ? -1 : customModelData);
+        for (String key : dataKeys) {
+            hash = mix(hash, key);
+        }
+        hash = mix(hash, -2);
+        for (Map.Entry<String, Integer> entry : enchantments.entrySet()) {
+            hash = mix(mix(hash, entry.getKey()), entry.getValue());
+        }
+        return hash;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Integer getCustomModelData() {
+        return customModelData;
+    }
+
+    public List<String> getDataKeys() {
+        return dataKeys;
+    }
+
+    public Map<String, Integer> getEnchantments() {
+        return enchantments;
+    }
+
+    // Short description for menus and messages
+    public String describe() {
+        if (name != null) return ChatColor.stripColor(name);
+        if (customModelData != null) return "model " + customModelData;
+        if (!dataKeys.isEmpty()) return dataKeys.get(0);
+        if (!enchantments.isEmpty()) return "enchanted";
+        return "no extras";
+    }
+
+    private static String namespaced(String key) {
+        String lower = key.toLowerCase();
+        return lower.indexOf(':') < 0 ? "minecraft:" + lower : lower;
+    }
+
+    private static long mix(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        // Separator, so "ab" + "c" and "a" + "bc" differ
+        return (hash ^ 0xff) * FNV_PRIME;
+    }
+
+    private static long mix(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash = (hash ^ ((value >>> shift) & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ItemMatch)) return false;
+
+        ItemMatch match = (ItemMatch) other;
+        return Objects.equals(name, match.name) && Objects.equals(customModelData, match.customModelData)
+                && dataKeys.equals(match.dataKeys) && enchantments.equals(match.enchantments);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, customModelData, dataKeys, enchantments);
+    }
+}
@@ -0,0 +1,29 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.event.inventory.InventoryClickEvent;
+
+public class MainMenu extends Menu {
+
+    public MainMenu(AutoCompressor plugin, Player player) {
+        super(plugin, player, 27, ChatColor.DARK_PURPLE + "AutoCompressor Menu");
+    }
+
+    @Override
+    protected void render() {
+        set(11, MenuItems.CREATE_RULE);
+        set(15, MenuItems.LIST_RULES);
+    }
+
+    @Override
+    public void click(InventoryClickEvent event) {
+        event.setCancelled(true);
+
+        if (event.getRawSlot() == 11) {
+            new CreateRuleMenu(plugin, player).open();
+        } else if (event.getRawSlot() == 15) {
+            new RuleListMenu(plugin, player).open();
+        }
+    }
+}
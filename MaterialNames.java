@@ -0,0 +1,58 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.Material;
+import org.examplez.autocompressor.core.RuleIndex;
+
+// Display names for every material, formatted once ("IRON_INGOT" -> "Iron Ingot") and looked up by ordinal
+public final class MaterialNames {
+
+    private static final String[] NAMES;
+
+    static {
+        Material[] materials = Material.values();
+        NAMES = new String[materials.length];
+        for (Material material : materials) {
+            NAMES[material.ordinal()] = format(material);
+        }
+    }
+
+    private MaterialNames() {
+    }
+
+    public static String of(Material material) {
+        return NAMES[material.ordinal()];
+    }
+
+    // Name for a dense material id of a compiled rule set, custom items go by their match
+    public static String of(RuleIndex index, int id) {
+        int key = index.materialKey(id);
+        if (key < NAMES.length) {
+            return NAMES[key];
+        }
+
+        ItemMatch match = ((VariantMaterialTable) index.materialTable()).match(key);
+        return match == null ? "Custom Item" : match.describe();
+    }
+
+    private static String format(Material material) {
+        String name = material.toString();
+        name = name.replace('_', ' ').toLowerCase();
+
+        StringBuilder formattedName = new StringBuilder();
+        boolean capitalizeNext = true;
+
+        for (char c : name.toCharArray()) {
+            if (capitalizeNext && Character.isAlphabetic(c)) {
+                formattedName.append(Character.toUpperCase(c));
+                capitalizeNext = false;
+            } else {
+                formattedName.append(c);
+                if (c == ' ') {
+                    capitalizeNext = true;
+                }
+            }
+        }
+
+        return formattedName.toString();
+    }
+}
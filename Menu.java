@@ -0,0 +1,57 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+
+// Base for the plugin's menus. A menu is the holder of its own inventory, so MenuListener routes clicks
+// by holder type instead of comparing titles. It remembers what each slot shows: render() can set every
+// slot each time and only the slots that actually changed are sent to the client.
+public abstract class Menu implements InventoryHolder {
+
+    protected final AutoCompressor plugin;
+    protected final Player player;
+    private final Inventory inventory;
+    private final ItemStack[] shown;
+
+    protected Menu(AutoCompressor plugin, Player player, int size, String title) {
+        this.plugin = plugin;
+        this.player = player;
+        this.inventory = Bukkit.createInventory(this, size, title);
+        this.shown = new ItemStack[size];
+    }
+
+    @Override
+    public Inventory getInventory() {
+        return inventory;
+    }
+
+    public void open() {
+        render();
+        player.openInventory(inventory);
+    }
+
+    // Sets the slots from the menu's current state
+    protected abstract void render();
+
+    // Clicks anywhere in the view, the menu decides what to cancel
+    public abstract void click(InventoryClickEvent event);
+
+    public void closed() {
+    }
+
+    // Menu items are shared templates, so comparing identity is enough to skip unchanged slots
+    protected void set(int slot, ItemStack item) {
+        if (shown[slot] == item) return;
+
+        shown[slot] = item;
+        inventory.setItem(slot, item);
+    }
+
+    protected int size() {
+        return shown.length;
+    }
+}
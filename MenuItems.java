@@ -0,0 +1,64 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Menu item templates, built once. They are shared between all open menus and must never be changed;
+// Inventory#setItem copies them anyway.
+public final class MenuItems {
+
+    public static final ItemStack CREATE_RULE = create(Material.EMERALD,
+            ChatColor.GREEN + "Create New Rule",
+            ChatColor.GRAY + "Click to create a new compression rule");
+    public static final ItemStack LIST_RULES = create(Material.BOOK,
+            ChatColor.AQUA + "List Existing Rules",
+            ChatColor.GRAY + "Click to view and manage your rules");
+
+    public static final ItemStack SET_INPUT = create(Material.HOPPER,
+            ChatColor.YELLOW + "Set Input Item",
+            ChatColor.GRAY + "Click with an item to set input");
+    public static final ItemStack SET_OUTPUT = create(Material.CHEST,
+            ChatColor.YELLOW + "Set Output Item",
+            ChatColor.GRAY + "Click with an item to set output");
+    public static final ItemStack DECREASE = create(Material.RED_CONCRETE,
+            ChatColor.RED + "Decrease Quantity",
+            ChatColor.GRAY + "Click to decrease required amount");
+    public static final ItemStack INCREASE = create(Material.GREEN_CONCRETE,
+            ChatColor.GREEN + "Increase Quantity",
+            ChatColor.GRAY + "Click to increase required amount");
+    public static final ItemStack SAVE = create(Material.DIAMOND,
+            ChatColor.GREEN + "Save Rule",
+            ChatColor.GRAY + "Click to save this compression rule");
+    public static final ItemStack CANCEL = create(Material.BARRIER,
+            ChatColor.RED + "Cancel",
+            ChatColor.GRAY + "Click to cancel rule creation");
+
+    public static final ItemStack BACK = create(Material.ARROW,
+            ChatColor.AQUA + "Back to Main Menu",
+            ChatColor.GRAY + "Return to the main menu");
+    public static final ItemStack PREVIOUS_PAGE = create(Material.SPECTRAL_ARROW,
+            ChatColor.AQUA + "Previous Page");
+    public static final ItemStack NEXT_PAGE = create(Material.SPECTRAL_ARROW,
+            ChatColor.AQUA + "Next Page");
+
+    private MenuItems() {
+    }
+
+    public static ItemStack create(Material material, String name, String... lore) {
+        return create(material, name, Arrays.asList(lore));
+    }
+
+    public static ItemStack create(Material material, String name, List<String> lore) {
+        ItemStack item = new ItemStack(material);
+        ItemMeta meta = item.getItemMeta();
+        meta.setDisplayName(name);
+        meta.setLore(lore);
+        item.setItemMeta(meta);
+        return item;
+    }
+}
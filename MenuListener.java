@@ -0,0 +1,45 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.inventory.InventoryHolder;
+
+// Hands inventory events to the menu whose inventory is open
+public class MenuListener implements Listener {
+
+    @EventHandler
+    public void onInventoryClick(InventoryClickEvent event) {
+        Menu menu = menu(event.getInventory().getHolder(false));
+        if (menu != null) {
+            menu.click(event);
+        }
+    }
+
+    @EventHandler
+    public void onInventoryDrag(InventoryDragEvent event) {
+        Menu menu = menu(event.getInventory().getHolder(false));
+        if (menu == null) return;
+
+        for (int slot : event.getRawSlots()) {
+            if (slot < menu.getInventory().getSize()) {
+                event.setCancelled(true);
+                return;
+            }
+        }
+    }
+
+    @EventHandler
+    public void onInventoryClose(InventoryCloseEvent event) {
+        Menu menu = menu(event.getInventory().getHolder(false));
+        if (menu != null) {
+            menu.closed();
+        }
+    }
+
+    private static Menu menu(InventoryHolder holder) {
+        return holder instanceof Menu ? (Menu) holder : null;
+    }
+}
@@ -0,0 +1,127 @@
+package org.examplez.autocompressor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Serves the stats in the Prometheus text format on /metrics. It runs on a single thread of its own and
+// only reads the stats, the server thread never waits for it.
+public class MetricsServer {
+
+    private static final double[] QUANTILES = {0.5, 0.99};
+
+    private final CompressionStats stats;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public MetricsServer(CompressionStats stats, String host, int port) throws IOException {
+        this.stats = stats;
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "AutoCompressor-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/metrics", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    String render() {
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "autocompressor_phase_seconds", "summary", "Time spent per compression phase");
+        for (CompressionStats.Phase phase : CompressionStats.Phase.values()) {
+            LatencyHistogram timings = stats.getTimings(phase);
+            String label = "phase=\"" + phase.key() + "\"";
+            for (double quantile : QUANTILES) {
+                sample(out, "autocompressor_phase_seconds", label + ",quantile=\"" + quantile + "\"", seconds(timings.percentile(quantile)));
+            }
+            sample(out, "autocompressor_phase_seconds_sum", label, seconds(timings.getSum()));
+            sample(out, "autocompressor_phase_seconds_count", label, Long.toString(timings.getCount()));
+        }
+
+        header(out, "autocompressor_phase_max_seconds", "gauge", "Longest time spent in a compression phase");
+        for (CompressionStats.Phase phase : CompressionStats.Phase.values()) {
+            sample(out, "autocompressor_phase_max_seconds", "phase=\"" + phase.key() + "\"", seconds(stats.getTimings(phase).getMax()));
+        }
+
+        if (stats.isTrackingAllocations()) {
+            header(out, "autocompressor_phase_allocated_bytes_total", "counter", "Bytes allocated per compression phase");
+            for (CompressionStats.Phase phase : CompressionStats.Phase.values()) {
+                sample(out, "autocompressor_phase_allocated_bytes_total", "phase=\"" + phase.key() + "\"", Long.toString(stats.getAllocated(phase)));
+            }
+        }
+
+        counter(out, "autocompressor_players_scanned_total", "Player inventories looked at", stats.getPlayersScanned());
+        counter(out, "autocompressor_players_compressed_total", "Passes that compressed something in a player inventory", stats.getPlayersCompressed());
+        counter(out, "autocompressor_stale_plans_total", "Plans thrown away because the inventory changed while planning", stats.getStalePlans());
+        counter(out, "autocompressor_containers_compressed_total", "Passes that compressed something in a container", stats.getContainersCompressed());
+        counter(out, "autocompressor_nested_compressed_total", "Shulker boxes and bundles compressed in player inventories", stats.getNestedCompressed());
+
+        header(out, "autocompressor_rule_items_consumed_total", "counter", "Input items consumed per rule");
+        for (Map.Entry<String, CompressionStats.RuleCounter> entry : stats.getRules().entrySet()) {
+            sample(out, "autocompressor_rule_items_consumed_total", "rule=\"" + escape(entry.getKey()) + "\"", Long.toString(entry.getValue().getConsumed()));
+        }
+        header(out, "autocompressor_rule_items_produced_total", "counter", "Output items produced per rule");
+        for (Map.Entry<String, CompressionStats.RuleCounter> entry : stats.getRules().entrySet()) {
+            sample(out, "autocompressor_rule_items_produced_total", "rule=\"" + escape(entry.getKey()) + "\"", Long.toString(entry.getValue().getProduced()));
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, "counter", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String value) {
+        out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1_000_000_000.0);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,222 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.Material;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.ShulkerBox;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.bukkit.inventory.meta.BlockStateMeta;
+import org.bukkit.inventory.meta.BundleMeta;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.examplez.autocompressor.core.CompressionPlan;
+import org.examplez.autocompressor.core.InventorySnapshot;
+import org.examplez.autocompressor.core.RuleIndex;
+import org.examplez.autocompressor.core.RuleMask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Compresses the contents of shulker boxes and bundles carried in a player's inventory, one level deep.
+// Opening one means building its block state or item list, so a pass opens at most max-containers of
+// them and the player is looked at again later for the rest. Each slot remembers the type and amount of
+// the container it held when that was last found with nothing to compress, so unchanged containers are
+// skipped without building their meta. Clicks that touch a container forget what the player's slots
+// held, those can change what's inside without changing anything else.
+public class NestedCompressor implements Listener {
+
+    // Bundles hold 64 weight, an item weighs 64 / its max stack size
+    private static final int BUNDLE_CAPACITY = 64;
+    // Free entries the output may go in, on top of the bundle's current ones
+    private static final int BUNDLE_EXTRA_SLOTS = 9;
+
+    private final AutoCompressor plugin;
+    private final CompressionNotifier notifier;
+    private final int maxContainers;
+    private final boolean[] nested;
+    private final Map<UUID, Settled> settled = new ConcurrentHashMap<>();
+
+    public NestedCompressor(AutoCompressor plugin, CompressionNotifier notifier, int maxContainers) {
+        this.plugin = plugin;
+        this.notifier = notifier;
+        this.maxContainers = Math.max(1, maxContainers);
+
+        // By name so every color of shulker box and bundle is included
+        Material[] materials = Material.values();
+        this.nested = new boolean[materials.length];
+        for (Material material : materials) {
+            String name = material.name();
+            nested[material.ordinal()] = name.endsWith("SHULKER_BOX") || name.endsWith("BUNDLE");
+        }
+    }
+
+    // Contents is what the inventory's getContents() returned, kept in step with what this changes.
+    // Returns false when the budget ran out before every container was looked at.
+    public boolean compress(Player player, RuleMask mask, ItemStack[] contents) {
+        if (mask.isEmpty()) return true;
+
+        PlayerInventory inventory = player.getInventory();
+        Settled known = settled.get(player.getUniqueId());
+        if (known == null || known.mask != mask || known.hashes.length != contents.length) {
+            // Different rules may compress what the old ones left alone
+            known = new Settled(mask, contents.length);
+            settled.put(player.getUniqueId(), known);
+        }
+
+        int opened = 0;
+        for (int slot = 0; slot < contents.length; slot++) {
+            ItemStack item = contents[slot];
+            if (!isNested(item)) {
+                known.known[slot] = false;
+                continue;
+            }
+
+            int hash = hash(item);
+            if (known.known[slot] && known.hashes[slot] == hash) continue;
+            if (opened == maxContainers) return false;
+
+            opened++;
+            ItemStack result = compressContainer(player, mask, item);
+            if (result != null) {
+                inventory.setItem(slot, result);
+                contents[slot] = result;
+                hash = hash(result);
+            }
+            known.known[slot] = true;
+            known.hashes[slot] = hash;
+        }
+        return true;
+    }
+
+    // Without building the meta, which is what opening a container costs
+    private static int hash(ItemStack item) {
+        return 31 * (31 * item.getType().ordinal() + item.getAmount()) + (item.hasItemMeta() ? 1 : 0);
+    }
+
+    // The compressed container, or null when there was nothing to compress in it
+    private ItemStack compressContainer(Player player, RuleMask mask, ItemStack item) {
+        ItemMeta meta = item.getItemMeta();
+        if (meta instanceof BlockStateMeta) {
+            return compressShulkerBox(player, mask, item, (BlockStateMeta) meta);
+        }
+        if (meta instanceof BundleMeta) {
+            return compressBundle(player, mask, item, (BundleMeta) meta);
+        }
+        return null;
+    }
+
+    private ItemStack compressShulkerBox(Player player, RuleMask mask, ItemStack item, BlockStateMeta meta) {
+        if (!meta.hasBlockState()) return null;
+
+        BlockState state = meta.getBlockState();
+        if (!(state instanceof ShulkerBox)) return null;
+
+        Inventory box = ((ShulkerBox) state).getSnapshotInventory();
+        ItemStack[] contents = box.getContents();
+        CompressionPlan plan = plan(mask, contents);
+        if (plan == null) return null;
+
+        drop(player, BukkitInventories.apply(contents, plan));
+        box.setContents(contents);
+        meta.setBlockState(state);
+        return finish(player, item, meta, plan);
+    }
+
+    private ItemStack compressBundle(Player player, RuleMask mask, ItemStack item, BundleMeta meta) {
+        if (!meta.hasItems()) return null;
+
+        List<ItemStack> items = meta.getItems();
+        ItemStack[] contents = items.toArray(new ItemStack[items.size() + BUNDLE_EXTRA_SLOTS]);
+        CompressionPlan plan = plan(mask, contents);
+        if (plan == null || weightChange(plan) > 0) {
+            // Output weighing more than the input might not fit in the bundle
+            return null;
+        }
+
+        drop(player, BukkitInventories.apply(contents, plan));
+        List<ItemStack> compressed = new ArrayList<>(contents.length);
+        for (ItemStack content : contents) {
+            if (content != null) {
+                compressed.add(content);
+            }
+        }
+        meta.setItems(compressed);
+        return finish(player, item, meta, plan);
+    }
+
+    private CompressionPlan plan(RuleMask mask, ItemStack[] contents) {
+        InventorySnapshot snapshot = BukkitInventories.snapshot(mask.index(), contents, contents.length);
+        snapshot.restrictTo(mask);
+        return plugin.planCompression(snapshot);
+    }
+
+    private ItemStack finish(Player player, ItemStack item, ItemMeta meta, CompressionPlan plan) {
+        ItemStack result = item.clone();
+        result.setItemMeta(meta);
+        notifier.record(player, plan);
+        plugin.getStats().recordNestedPlan(plan);
+        return result;
+    }
+
+    // In 1/64ths of a bundle
+    private static int weightChange(CompressionPlan plan) {
+        RuleIndex index = plan.index();
+        int change = 0;
+        for (int material = 0; material < index.materialCount(); material++) {
+            change += plan.change(material) * (BUNDLE_CAPACITY / index.maxStackSize(material));
+        }
+        return change;
+    }
+
+    private static void drop(Player player, List<ItemStack> leftovers) {
+        for (ItemStack item : leftovers) {
+            player.getWorld().dropItemNaturally(player.getLocation(), item);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryClick(InventoryClickEvent event) {
+        // Putting items in a bundle or swapping one shulker box for another of the same color
+        if (isNested(event.getCurrentItem()) || isNested(event.getCursor())) {
+            settled.remove(event.getWhoClicked().getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryDrag(InventoryDragEvent event) {
+        if (isNested(event.getOldCursor())) {
+            settled.remove(event.getWhoClicked().getUniqueId());
+        }
+    }
+
+    private boolean isNested(ItemStack item) {
+        return item != null && nested[item.getType().ordinal()];
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        settled.remove(event.getPlayer().getUniqueId());
+    }
+
+    private static final class Settled {
+        private final RuleMask mask;
+        private final int[] hashes;
+        private final boolean[] known;
+
+        private Settled(RuleMask mask, int size) {
+            this.mask = mask;
+            this.hashes = new int[size];
+            this.known = new boolean[size];
+        }
+    }
+}
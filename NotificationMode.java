@@ -0,0 +1,13 @@
+package org.examplez.autocompressor;
+
+// How players are told about what got compressed
+public enum NotificationMode {
+    // No messages at all
+    OFF,
+    // One chat line per window with the net result
+    SUMMARY,
+    // The same line in the action bar instead of chat
+    ACTION_BAR,
+    // One chat line per rule per window
+    VERBOSE
+}
@@ -0,0 +1,284 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.Material;
+import org.bukkit.entity.Item;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.examplez.autocompressor.core.OverflowPolicy;
+import org.examplez.autocompressor.core.RuleIndex;
+import org.examplez.autocompressor.core.RuleMask;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Compresses items as they are picked up, before they reach the inventory.
+// Each player has a running count of the rule materials in their storage slots, so a pickup that can't
+// complete a batch costs one array lookup. Only when the count says a rule can fire is the inventory
+// counted for real, the missing input taken out and the output inserted in place of the picked up item.
+// The count can drift when items leave the inventory in other ways; that only ever costs an extra recount,
+// changes that add items (clicks, drags, other plugins) reset it and still go through the regular passes.
+// Output that might not fit is left to a regular pass, which knows the overflow policy.
+public class PickupCompressor implements Listener {
+
+    private static final int STORAGE_SIZE = 36;
+
+    private final AutoCompressor plugin;
+    private final CompressionNotifier notifier;
+    private final DirtyInventoryTracker dirtyTracker;
+    private final Map<UUID, MaterialCounts> counts = new ConcurrentHashMap<>();
+
+    public PickupCompressor(AutoCompressor plugin, CompressionNotifier notifier, DirtyInventoryTracker dirtyTracker) {
+        this.plugin = plugin;
+        this.notifier = notifier;
+        this.dirtyTracker = dirtyTracker;
+    }
+
+    // The inventory changed in a way we didn't see, count it again on the next pickup
+    public void invalidate(UUID playerId) {
+        counts.remove(playerId);
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onEntityPickupItem(EntityPickupItemEvent event) {
+        if (!(event.getEntity() instanceof Player)) return;
+
+        Player player = (Player) event.getEntity();
+        Item item = event.getItem();
+        ItemStack stack = item.getItemStack();
+        RuleSet rules = plugin.getRules(player);
+        RuleMask mask = plugin.getRuleMask(player);
+        if (stack.hasItemMeta()) {
+            // Custom items go through a regular pass, if a rule wants them at all
+            int id = rules.getIndex().denseId(rules.getMaterials().key(stack));
+            if (id >= 0 && mask.takes(id)) {
+                dirtyTracker.markDirty(player);
+            }
+            return;
+        }
+
+        RuleIndex index = rules.getIndex();
+        int id = index.denseId(stack.getType().ordinal());
+        if (id < 0) return;
+
+        if (event.getRemaining() > 0) {
+            // The inventory is nearly full and vanilla knows best where it goes, a regular pass compresses it
+            invalidate(player.getUniqueId());
+            dirtyTracker.markDirty(player);
+            return;
+        }
+
+        MaterialCounts playerCounts = countsFor(player, index);
+        int amount = stack.getAmount();
+        if (!canFire(mask, id, playerCounts.counts[id] + amount)) {
+            playerCounts.counts[id] += amount;
+            return;
+        }
+
+        // Might have drifted, make sure before touching the inventory
+        playerCounts.recount(player.getInventory());
+        if (!canFire(mask, id, playerCounts.counts[id] + amount)) {
+            playerCounts.counts[id] += amount;
+            return;
+        }
+
+        // Only pickups that compress are timed, counting the rest is a few array writes
+        long start = System.nanoTime();
+        long allocated = plugin.getStats().allocatedBytes();
+        int[] batches = new int[index.ruleCount()];
+        int[] change = plan(mask, playerCounts.counts, id, amount, batches);
+        if (plugin.getOverflowPolicy() != OverflowPolicy.DROP && !fits(player.getInventory(), index, change)) {
+            // Only a regular pass knows how to hold back output that has no room, vanilla takes the pickup
+            playerCounts.counts[id] += amount;
+            dirtyTracker.markDirty(player);
+            return;
+        }
+
+        event.setCancelled(true);
+        player.playPickupItemAnimation(item, amount);
+        int leftover = compress(player, index, playerCounts.counts, id, change, batches);
+        if (leftover > 0) {
+            stack.setAmount(leftover);
+            item.setItemStack(stack);
+        } else {
+            item.remove();
+        }
+        plugin.getStats().record(CompressionStats.Phase.PICKUP, start, allocated);
+    }
+
+    private static boolean canFire(RuleMask mask, int id, int available) {
+        if (!mask.takes(id)) return false;
+
+        RuleIndex index = mask.index();
+        for (int rule : index.rulesFor(id)) {
+            if (mask.isActive(rule) && available >= index.inputAmount(rule)) return true;
+        }
+        return false;
+    }
+
+    // Runs the picked up items through the rules, in dense id order like the engine, so chains resolve in
+    // one go. Returns how much of each material the inventory gains, or loses when it's negative, and fills
+    // in how many batches each rule compresses.
+    private static int[] plan(RuleMask mask, int[] counts, int pickedUp, int amount, int[] batches) {
+        RuleIndex index = mask.index();
+        int[] change = new int[index.materialCount()];
+        change[pickedUp] = amount;
+
+        for (int material = pickedUp; material < change.length; material++) {
+            if (change[material] == 0) continue;
+
+            int available = counts[material] + change[material];
+            for (int rule : index.rulesFor(material)) {
+                if (!mask.isActive(rule)) continue;
+                batches[rule] = available / index.inputAmount(rule);
+                if (batches[rule] == 0) continue;
+
+                available -= batches[rule] * index.inputAmount(rule);
+                change[index.output(rule)] += batches[rule] * index.outputAmount(rule);
+            }
+            change[material] = available - counts[material];
+        }
+        return change;
+    }
+
+    // Whether everything the inventory gains fits in its storage slots. The slots that taking the input frees
+    // up aren't counted, so this can turn down a pickup that would just have fit.
+    private static boolean fits(PlayerInventory inventory, RuleIndex index, int[] change) {
+        int[] room = new int[change.length];
+        int freeSlots = 0;
+        for (int slot = 0; slot < STORAGE_SIZE; slot++) {
+            ItemStack item = inventory.getItem(slot);
+            if (item == null || item.getType().isAir()) {
+                freeSlots++;
+                continue;
+            }
+            if (item.hasItemMeta()) continue;
+
+            int id = index.denseId(item.getType().ordinal());
+            if (id >= 0) {
+                room[id] += Math.max(0, index.maxStackSize(id) - item.getAmount());
+            }
+        }
+
+        for (int material = 0; material < change.length; material++) {
+            int rest = change[material] - room[material];
+            if (rest <= 0) continue;
+
+            int maxStackSize = index.maxStackSize(material);
+            freeSlots -= (rest + maxStackSize - 1) / maxStackSize;
+            if (freeSlots < 0) return false;
+        }
+        return true;
+    }
+
+    // Applies what plan() came up with. Returns how much of the picked up material didn't fit and has to stay
+    // on the ground. Other output only goes on the ground under the drop policy, fits() said there is room.
+    private int compress(Player player, RuleIndex index, int[] counts, int pickedUp, int[] change, int[] batches) {
+        PlayerInventory inventory = player.getInventory();
+        for (int rule = 0; rule < batches.length; rule++) {
+            if (batches[rule] == 0) continue;
+            notifier.record(player, index, rule, batches[rule]);
+            plugin.getStats().recordRule(index, rule, batches[rule]);
+        }
+
+        for (int material = pickedUp; material < change.length; material++) {
+            if (change[material] < 0) {
+                take(inventory, index.materialKey(material), -change[material]);
+                counts[material] += change[material];
+            }
+        }
+
+        int leftover = 0;
+        for (int material = pickedUp; material < change.length; material++) {
+            if (change[material] <= 0) continue;
+
+            int added = change[material];
+            Material type = BukkitMaterialTable.material(index.materialKey(material));
+            for (ItemStack rest : inventory.addItem(new ItemStack(type, added)).values()) {
+                added -= rest.getAmount();
+                if (material == pickedUp) {
+                    leftover += rest.getAmount();
+                } else {
+                    player.getWorld().dropItemNaturally(player.getLocation(), rest);
+                }
+            }
+            counts[material] += added;
+        }
+        return leftover;
+    }
+
+    // Removes plain items of the material from the storage slots, hotbar last
+    private static void take(PlayerInventory inventory, int materialKey, int amount) {
+        for (int slot = STORAGE_SIZE - 1; slot >= 0 && amount > 0; slot--) {
+            ItemStack item = inventory.getItem(slot);
+            if (item == null || item.getType().ordinal() != materialKey || item.hasItemMeta()) continue;
+
+            int taken = Math.min(amount, item.getAmount());
+            amount -= taken;
+            if (taken == item.getAmount()) {
+                inventory.setItem(slot, null);
+            } else {
+                item.setAmount(item.getAmount() - taken);
+                inventory.setItem(slot, item);
+            }
+        }
+    }
+
+    private MaterialCounts countsFor(Player player, RuleIndex index) {
+        MaterialCounts playerCounts = counts.get(player.getUniqueId());
+        if (playerCounts == null || playerCounts.index != index) {
+            playerCounts = new MaterialCounts(index);
+            playerCounts.recount(player.getInventory());
+            counts.put(player.getUniqueId(), playerCounts);
+        }
+        return playerCounts;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryClick(InventoryClickEvent event) {
+        invalidate(event.getWhoClicked().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryDrag(InventoryDragEvent event) {
+        invalidate(event.getWhoClicked().getUniqueId());
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        invalidate(event.getPlayer().getUniqueId());
+    }
+
+    private static final class MaterialCounts {
+        private final RuleIndex index;
+        private final int[] counts;
+
+        private MaterialCounts(RuleIndex index) {
+            this.index = index;
+            this.counts = new int[index.materialCount()];
+        }
+
+        // Plain items of each rule material in the storage slots
+        private void recount(PlayerInventory inventory) {
+            Arrays.fill(counts, 0);
+            for (int slot = 0; slot < STORAGE_SIZE; slot++) {
+                ItemStack item = inventory.getItem(slot);
+                if (item == null || item.hasItemMeta()) continue;
+
+                int id = index.denseId(item.getType().ordinal());
+                if (id >= 0) {
+                    counts[id] += item.getAmount();
+                }
+            }
+        }
+    }
+}
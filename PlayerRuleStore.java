@@ -0,0 +1,223 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Each player's own rules, kept in players/<uuid>.yml and layered on top of the server rules.
+// The file is read on the writer thread on join, so it comes after the last write of a previous session;
+// until it's there the player just gets the server rules.
+// Loaded players sit in an LRU cache that drops them on quit and never drops anyone still online. Each keeps
+// its effective rule set, the server rules plus their own, compiled off the main thread whenever either side
+// changes and swapped in on the next lookup. Players are looked up from their own region threads on Folia, so the cache is a concurrent
+// map and the least recently used entry is found by a scan, which only happens once the cache is full.
+public class PlayerRuleStore implements Listener {
+
+    private final AutoCompressor plugin;
+    private final File folder;
+    private final ScheduledThreadPoolExecutor writer = RulePersister.createExecutor("AutoCompressor-PlayerRules");
+    private final Map<UUID, PlayerRules> cache = new ConcurrentHashMap<>();
+    private final int cacheSize;
+
+    public PlayerRuleStore(AutoCompressor plugin, int cacheSize) {
+        this.plugin = plugin;
+        this.folder = new File(plugin.getDataFolder(), "players");
+        this.cacheSize = cacheSize;
+    }
+
+    // The rules that apply to the player: their effective set once loaded, the server rules until then
+    public RuleSet getRules(Player player) {
+        RuleSet global = plugin.getRules();
+        PlayerRules rules = get(player.getUniqueId());
+        return rules == null ? global : rules.effective(global);
+    }
+
+    // Only the player's own rules, null while they haven't been loaded yet
+    public RuleSet getOwnRules(Player player) {
+        PlayerRules rules = get(player.getUniqueId());
+        return rules == null ? null : rules.own;
+    }
+
+    public void setOwnRules(Player player, RuleSet own) {
+        PlayerRules rules = get(player.getUniqueId());
+        if (rules == null) return;
+
+        rules.setOwn(own);
+        rules.persister.markDirty(own);
+        plugin.getBackend().runAsync(() -> rules.prepare(plugin.getRules()));
+    }
+
+    // Any thread, before new server rules are swapped in: compiles every loaded player's rules on top of them
+    public void prepare(RuleSet upcomingGlobal) {
+        for (PlayerRules rules : cache.values()) {
+            rules.prepare(upcomingGlobal);
+        }
+    }
+
+    private PlayerRules get(UUID playerId) {
+        PlayerRules rules = cache.get(playerId);
+        if (rules != null) {
+            rules.lastUsed = System.nanoTime();
+        }
+        return rules;
+    }
+
+    private void put(UUID playerId, PlayerRules rules) {
+        rules.lastUsed = System.nanoTime();
+        cache.put(playerId, rules);
+        while (cache.size() > cacheSize) {
+            // Online players stay, they'd lose their rules and any edit made until they rejoin
+            Map.Entry<UUID, PlayerRules> eldest = null;
+            for (Map.Entry<UUID, PlayerRules> entry : cache.entrySet()) {
+                if (Bukkit.getPlayer(entry.getKey()) != null) continue;
+                if (eldest == null || entry.getValue().lastUsed - eldest.getValue().lastUsed < 0) {
+                    eldest = entry;
+                }
+            }
+            if (eldest == null) return;
+
+            if (cache.remove(eldest.getKey(), eldest.getValue())) {
+                eldest.getValue().persister.flush();
+            }
+        }
+    }
+
+    public boolean isLoaded(Player player) {
+        return cache.containsKey(player.getUniqueId());
+    }
+
+    // Loads the player's rules unless they are already cached
+    public void load(Player player) {
+        UUID playerId = player.getUniqueId();
+        if (cache.containsKey(playerId)) return;
+
+        File file = new File(folder, playerId + ".yml");
+        RuleSet global = plugin.getRules();
+        // On the writer, behind the final write queued when they last quit
+        writer.execute(() -> {
+            YamlConfiguration config = file.exists() ? YamlConfiguration.loadConfiguration(file) : new YamlConfiguration();
+            RuleLoader loader = RuleLoader.read(config);
+            RuleSet own = new RuleSet(loader.getRules());
+            // Compile against the server rules of the moment, it's redone on use if they changed meanwhile
+            RuleSet effective = own.getRules().isEmpty() ? global : global.layer(own);
+
+            plugin.getBackend().runGlobal(() -> {
+                for (String error : loader.getErrors()) {
+                    plugin.getLogger().warning("Skipping invalid rule in " + file.getName() + ": " + error);
+                }
+                for (String id : own.getRules().keySet()) {
+                    if (global.getRules().containsKey(id)) {
+                        plugin.getLogger().warning("Ignoring rule " + id + " in " + file.getName() + ", a server rule has the same id");
+                    }
+                }
+                if (Bukkit.getPlayer(playerId) == null || cache.containsKey(playerId)) return;
+
+                PlayerRules rules = new PlayerRules(own, new RulePersister(plugin.getLogger(), file, new YamlConfiguration(), writer));
+                rules.global = global;
+                rules.effective = effective;
+                put(playerId, rules);
+            });
+        });
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        load(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        PlayerRules rules = cache.remove(event.getPlayer().getUniqueId());
+        if (rules != null) {
+            rules.persister.flush();
+        }
+    }
+
+    // Writes every pending change and stops the writer thread
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        List<PlayerRules> loaded = new ArrayList<>(cache.values());
+        cache.clear();
+        for (PlayerRules rules : loaded) {
+            rules.persister.flush();
+        }
+
+        writer.shutdown();
+        try {
+            return writer.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static final class PlayerRules {
+        private final RulePersister persister;
+        private volatile RuleSet own;
+        private RuleSet global;
+        private RuleSet effective;
+        // Compiled ahead by prepare(), for the server rules and own rules they were compiled from
+        private RuleSet nextGlobal;
+        private RuleSet nextOwn;
+        private RuleSet nextEffective;
+        private volatile long lastUsed;
+
+        private PlayerRules(RuleSet own, RulePersister persister) {
+            this.own = own;
+            this.persister = persister;
+        }
+
+        private synchronized void setOwn(RuleSet own) {
+            this.own = own;
+            this.effective = null;
+        }
+
+        // Layering is the expensive part, so it happens outside the lock
+        private void prepare(RuleSet upcomingGlobal) {
+            RuleSet currentOwn = own;
+            if (currentOwn.getRules().isEmpty()) return;
+
+            RuleSet layered = upcomingGlobal.layer(currentOwn);
+            synchronized (this) {
+                nextGlobal = upcomingGlobal;
+                nextOwn = currentOwn;
+                nextEffective = layered;
+            }
+        }
+
+        // Per player, so the lock is practically never contended
+        private synchronized RuleSet effective(RuleSet currentGlobal) {
+            if (own.getRules().isEmpty()) {
+                return currentGlobal;
+            }
+            if (effective != null && global == currentGlobal) {
+                return effective;
+            }
+
+            global = currentGlobal;
+            if (nextGlobal == currentGlobal && nextOwn == own) {
+                effective = nextEffective;
+                nextGlobal = null;
+                nextOwn = null;
+                nextEffective = null;
+            } else {
+                // Nothing compiled ahead for these rules, only when they changed again while compiling
+                effective = currentGlobal.layer(own);
+            }
+            return effective;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.inventory.ItemStack;
+import org.examplez.autocompressor.core.CompressionPlan;
+
+// CompressionScheduler's counterpart on Folia. Every player gets a repeating task on their own entity
+// scheduler, so passes run on whichever thread owns the player and spread over the region threads instead
+// of one global task going through everybody. The task keeps its own backoff state and only ever touches
+// its own player; a dirty mark ends the backoff like it does on the main thread. There is no shared per-tick budget: each region thread runs its players' passes.
+public class RegionCompressionScheduler implements Listener {
+
+    private final AutoCompressor plugin;
+    private final SchedulerBackend backend;
+    private final DirtyInventoryTracker dirtyTracker;
+
+    private final boolean dirtyMode;
+    private final int intervalTicks;
+    private final int fullSweepRuns;
+    private final int idlePasses;
+    private final int maxBackoffRuns;
+
+    public RegionCompressionScheduler(AutoCompressor plugin, SchedulerBackend backend, DirtyInventoryTracker dirtyTracker,
+                                      ConfigurationSection config) {
+        this.plugin = plugin;
+        this.backend = backend;
+        this.dirtyTracker = dirtyTracker;
+
+        this.dirtyMode = !config.getString("compression.mode", "dirty").equalsIgnoreCase("full");
+        this.intervalTicks = Math.max(1, config.getInt("scheduler.interval-ticks", 20));
+        this.fullSweepRuns = config.getInt("compression.full-sweep-seconds", 30) * 20 / intervalTicks;
+        this.idlePasses = Math.max(1, config.getInt("scheduler.idle-passes", 3));
+        this.maxBackoffRuns = Math.max(1, config.getInt("scheduler.max-backoff-ticks", 200) / intervalTicks);
+    }
+
+    // For the players that were online before the plugin
+    public void start() {
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            schedule(player);
+        }
+    }
+
+    private void schedule(Player player) {
+        PlayerState state = new PlayerState();
+        backend.runForPlayer(player, () -> run(player, state), intervalTicks, intervalTicks);
+    }
+
+    private void run(Player player, PlayerState state) {
+        state.runs++;
+        boolean sweep = !dirtyMode || (fullSweepRuns > 0 && state.runs % fullSweepRuns == 0);
+        boolean dirty = dirtyTracker.take(player.getUniqueId());
+        if (dirty && state.idlePasses > 0) {
+            // The inventory really changed, the player is due again one run after their last pass
+            state.idlePasses = 0;
+            state.nextEligibleRun = Math.min(state.nextEligibleRun, state.lastPassRun + 1);
+        }
+        if (!dirty && !sweep && !state.retry) return;
+
+        if (state.runs < state.nextEligibleRun) {
+            // Backing off, look again once the player is eligible
+            state.retry = true;
+            return;
+        }
+        state.retry = false;
+
+        CompressionPassEvent event = new CompressionPassEvent();
+        event.begin();
+        ItemStack[] contents = player.getInventory().getContents();
+        CompressionPlan plan = plugin.processCompression(player, contents);
+        finish(state, plan, plugin.compressNested(player, contents));
+        CompressionScheduler.commit(event, player, false, plan, plan != null ? "compressed" : "idle");
+    }
+
+    // Containers the nested pass had no budget for count as work left, not as an idle pass
+    private void finish(PlayerState state, CompressionPlan plan, boolean nestedDone) {
+        state.lastPassRun = state.runs;
+        if (plan != null || !nestedDone) {
+            state.idlePasses = 0;
+            state.nextEligibleRun = state.runs + 1;
+            if (!nestedDone || plan.isLimited()) {
+                // Some output didn't fit or containers are left, try again once there may be room
+                state.retry = true;
+            }
+        } else {
+            state.idlePasses++;
+            int doublings = Math.min(state.idlePasses - idlePasses + 1, 16);
+            long delay = doublings > 0 ? 1L << doublings : 1;
+            state.nextEligibleRun = state.runs + Math.min(delay, maxBackoffRuns);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        // The task ends with the player's entity when they quit
+        schedule(event.getPlayer());
+    }
+
+    private static final class PlayerState {
+        private long runs;
+        private long lastPassRun;
+        private long nextEligibleRun;
+        private int idlePasses;
+        // Looked at again on the next eligible run for the scheduler's own reasons, not a change
+        private boolean retry;
+    }
+}
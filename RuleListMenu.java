@@ -0,0 +1,147 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.inventory.ItemStack;
+import org.examplez.autocompressor.core.RuleIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+public class RuleListMenu extends Menu {
+
+    private static final int PAGE_SIZE = 45;
+    private static final int PREVIOUS_SLOT = 45;
+    private static final int BACK_SLOT = 49;
+    private static final int NEXT_SLOT = 53;
+
+    // Rule entries per effective rule set. Sets are immutable and a player's effective set is rebuilt
+    // whenever their own rules change, so the same set always renders the same entries.
+    private static final Map<RuleSet, Entries> ENTRIES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private int page;
+    // The rule shown in every slot of the current page, null where nothing can be removed
+    private final String[] ruleIds = new String[PAGE_SIZE];
+
+    public RuleListMenu(AutoCompressor plugin, Player player) {
+        super(plugin, player, 54, ChatColor.DARK_PURPLE + "Compression Rules");
+    }
+
+    @Override
+    protected void render() {
+        Entries entries = entries();
+        int pages = Math.max(1, (entries.ids.length + PAGE_SIZE - 1) / PAGE_SIZE);
+        page = Math.min(page, pages - 1);
+
+        int first = page * PAGE_SIZE;
+        for (int slot = 0; slot < PAGE_SIZE; slot++) {
+            int entry = first + slot;
+            if (entry < entries.ids.length) {
+                set(slot, entries.items[entry]);
+                ruleIds[slot] = entries.own[entry] ? entries.ids[entry] : null;
+            } else {
+                set(slot, null);
+                ruleIds[slot] = null;
+            }
+        }
+
+        set(PREVIOUS_SLOT, page > 0 ? MenuItems.PREVIOUS_PAGE : null);
+        set(BACK_SLOT, MenuItems.BACK);
+        set(NEXT_SLOT, page < pages - 1 ? MenuItems.NEXT_PAGE : null);
+    }
+
+    @Override
+    public void click(InventoryClickEvent event) {
+        event.setCancelled(true);
+        int slot = event.getRawSlot();
+
+        if (slot < PAGE_SIZE) {
+            String ruleId = ruleIds[slot];
+            RuleSet ownRules = plugin.getPlayerRules().getOwnRules(player);
+            if (ruleId == null || ownRules == null || !ownRules.getRules().containsKey(ruleId)) return;
+
+            plugin.getPlayerRules().setOwnRules(player, ownRules.without(ruleId));
+            player.sendMessage(ChatColor.GREEN + "Compression rule removed successfully!");
+            render();
+        } else if (slot == PREVIOUS_SLOT && page > 0) {
+            page--;
+            render();
+        } else if (slot == NEXT_SLOT) {
+            page++;
+            render();
+        } else if (slot == BACK_SLOT) {
+            new MainMenu(plugin, player).open();
+        }
+    }
+
+    private Entries entries() {
+        RuleSet effective = plugin.getPlayerRules().getRules(player);
+        Entries entries = ENTRIES.get(effective);
+        if (entries == null) {
+            entries = new Entries(effective, plugin.getPlayerRules().getOwnRules(player), plugin.getRules());
+            ENTRIES.put(effective, entries);
+        }
+        return entries;
+    }
+
+    private static final class Entries {
+        final String[] ids;
+        final boolean[] own;
+        final ItemStack[] items;
+
+        Entries(RuleSet effective, RuleSet ownRules, RuleSet global) {
+            // The player's own rules first, then the server rules
+            Map<String, AutoCompressor.CompressionRule> ownMap = ownRules == null ? Collections.emptyMap() : ownRules.getRules();
+            int count = ownMap.size() + global.getRules().size();
+            ids = new String[count];
+            own = new boolean[count];
+            items = new ItemStack[count];
+
+            int position = 0;
+            for (Map.Entry<String, AutoCompressor.CompressionRule> entry : ownMap.entrySet()) {
+                add(position++, effective.getIndex(), entry.getKey(), entry.getValue(), true,
+                        global.getRules().containsKey(entry.getKey()));
+            }
+            for (Map.Entry<String, AutoCompressor.CompressionRule> entry : global.getRules().entrySet()) {
+                add(position++, effective.getIndex(), entry.getKey(), entry.getValue(), false, false);
+            }
+        }
+
+        private void add(int position, RuleIndex ruleIndex, String id, AutoCompressor.CompressionRule rule,
+                         boolean isOwn, boolean shadowed) {
+            List<String> lore = new ArrayList<>();
+            lore.add(ChatColor.GRAY + "Input: " + ChatColor.WHITE + rule.getInputAmount() + " " + MaterialNames.of(rule.getInputMaterial()));
+            if (rule.getInputMatch() != null) {
+                lore.add(ChatColor.GRAY + "Only: " + ChatColor.WHITE + rule.getInputMatch().describe());
+            }
+            lore.add(ChatColor.GRAY + "Output: " + ChatColor.WHITE + rule.getOutputAmount() + " " + MaterialNames.of(rule.getOutputMaterial()));
+
+            int compiledRule = shadowed ? -1 : ruleIndex.ruleIndex(id);
+            if (shadowed) {
+                lore.add(ChatColor.RED + "Not used, a server rule has the same id");
+            } else if (compiledRule < 0) {
+                lore.add(ChatColor.RED + "Disabled, see the server log");
+            } else if (ruleIndex.chainBase(compiledRule) != ruleIndex.input(compiledRule)) {
+                lore.add(ChatColor.GRAY + "Chain: " + ChatColor.WHITE + ruleIndex.chainBaseAmount(compiledRule) + " " +
+                        MaterialNames.of(ruleIndex, ruleIndex.chainBase(compiledRule)) + " -> " +
+                        ruleIndex.chainOutputAmount(compiledRule) + " " + MaterialNames.of(rule.getOutputMaterial()));
+            }
+            lore.add("");
+            if (isOwn) {
+                lore.add(ChatColor.RED + "Click to remove this rule");
+            } else {
+                lore.add(ChatColor.DARK_GRAY + "Server rule, applies to everyone");
+            }
+
+            ids[position] = id;
+            own[position] = isOwn;
+            items[position] = MenuItems.create(rule.getOutputMaterial(),
+                    (isOwn ? ChatColor.GOLD + "Compression Rule #" : ChatColor.YELLOW + "Server Rule #") + (position + 1),
+                    lore);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.enchantments.Enchantment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reads the rules section of config.yml, collecting every mistake instead of stopping at the first one.
+// Doesn't touch the server, so it can run off the main thread.
+public final class RuleLoader {
+
+    private final Map<String, AutoCompressor.CompressionRule> rules = new LinkedHashMap<>();
+    private final List<String> errors = new ArrayList<>();
+
+    private RuleLoader() {
+    }
+
+    public static RuleLoader read(ConfigurationSection config) {
+        RuleLoader loader = new RuleLoader();
+        ConfigurationSection rulesSection = config.getConfigurationSection("rules");
+        if (rulesSection == null) {
+            if (config.contains("rules")) {
+                loader.errors.add("'rules' is not a section");
+            }
+            return loader;
+        }
+
+        for (String key : rulesSection.getKeys(false)) {
+            loader.readRule(key, rulesSection.getConfigurationSection(key));
+        }
+        return loader;
+    }
+
+    private void readRule(String key, ConfigurationSection section) {
+        if (section == null) {
+            errors.add("Rule '" + key + "' is not a section");
+            return;
+        }
+
+        int errorCount = errors.size();
+        Material inputMaterial = material(key, section, "input.material");
+        int inputAmount = amount(key, section, "input.amount", 0);
+        Material outputMaterial = material(key, section, "output.material");
+        int outputAmount = amount(key, section, "output.amount", 1);
+        ItemMatch inputMatch = match(key, section.getConfigurationSection("input.match"));
+        List<String> worlds = null;
+        if (section.contains("worlds")) {
+            if (section.isList("worlds")) {
+                worlds = section.getStringList("worlds");
+            } else {
+                errors.add("Rule '" + key + "': worlds must be a list of world names");
+            }
+        }
+        String permission = section.getString("permission");
+        if (permission != null && permission.trim().isEmpty()) {
+            errors.add("Rule '" + key + "': permission is empty");
+        }
+        if (errors.size() > errorCount) return;
+
+        AutoCompressor.CompressionRule rule = new AutoCompressor.CompressionRule(inputMaterial, inputAmount, outputMaterial, outputAmount, inputMatch);
+        rule.setWorlds(worlds);
+        rule.setPermission(permission);
+        rules.put(key, rule);
+    }
+
+    // Optional, restricts the input to custom items
+    private ItemMatch match(String key, ConfigurationSection section) {
+        if (section == null) return null;
+
+        String name = section.getString("name");
+        Integer customModelData = null;
+        if (section.contains("custom-model-data")) {
+            if (section.isInt("custom-model-data")) {
+                customModelData = section.getInt("custom-model-data");
+            } else {
+                errors.add("Rule '" + key + "': input.match.custom-model-data must be a whole number");
+            }
+        }
+
+        List<String> dataKeys = section.contains("data-keys") ? section.getStringList("data-keys") : Collections.emptyList();
+        for (String dataKey : dataKeys) {
+            if (NamespacedKey.fromString(dataKey.toLowerCase()) == null) {
+                errors.add("Rule '" + key + "': '" + dataKey + "' in input.match.data-keys is not a valid key");
+            }
+        }
+
+        Map<String, Integer> enchantments = new LinkedHashMap<>();
+        ConfigurationSection enchantmentSection = section.getConfigurationSection("enchantments");
+        if (enchantmentSection != null) {
+            for (String enchantment : enchantmentSection.getKeys(false)) {
+                NamespacedKey enchantmentKey = NamespacedKey.fromString(enchantment.toLowerCase());
+                if (enchantmentKey == null || Enchantment.getByKey(enchantmentKey) == null) {
+                    errors.add("Rule '" + key + "': unknown enchantment '" + enchantment + "' in input.match.enchantments");
+                } else {
+                    enchantments.put(enchantment, enchantmentSection.getInt(enchantment, 1));
+                }
+            }
+        }
+
+        if (name == null && customModelData == null && dataKeys.isEmpty() && enchantments.isEmpty()) {
+            errors.add("Rule '" + key + "': input.match needs a name, custom-model-data, data-keys or enchantments");
+            return null;
+        }
+        return new ItemMatch(name == null ? null : ChatColor.translateAlternateColorCodes('&', name),
+                customModelData, dataKeys, enchantments);
+    }
+
+    private Material material(String key, ConfigurationSection section, String path) {
+        String name = section.getString(path);
+        if (name == null) {
+            errors.add("Rule '" + key + "' has no " + path);
+            return null;
+        }
+
+        Material material = Material.matchMaterial(name);
+        if (material == null) {
+            errors.add("Rule '" + key + "': unknown material '" + name + "' in " + path);
+        } else if (!material.isItem() || material.isAir()) {
+            errors.add("Rule '" + key + "': " + name + " in " + path + " is not an item");
+        }
+        return material;
+    }
+
+    private int amount(String key, ConfigurationSection section, String path, int defaultAmount) {
+        if (section.contains(path) && !section.isInt(path)) {
+            errors.add("Rule '" + key + "': " + path + " must be a whole number, got '" + section.get(path) + "'");
+            return 0;
+        }
+
+        int amount = section.getInt(path, defaultAmount);
+        if (amount <= 0) {
+            errors.add("Rule '" + key + "': " + path + " must be at least 1");
+        }
+        return amount;
+    }
+
+    // The rules that were read without problems
+    public Map<String, AutoCompressor.CompressionRule> getRules() {
+        return Collections.unmodifiableMap(rules);
+    }
+
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public boolean isValid() {
+        return errors.isEmpty();
+    }
+}
@@ -0,0 +1,145 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Writes a rules file in the background, currently the per-player rule files.
+// Changes only hand over the current immutable rule set; bursts of changes within SAVE_DELAY_MS are coalesced
+// into one write of the latest snapshot. The file is written to a temporary file first and then renamed
+// over the real file, so a crash mid-write never leaves a half-written file behind.
+public class RulePersister {
+
+    private static final long SAVE_DELAY_MS = 500;
+
+    private final Logger logger;
+    private final Path configPath;
+    private final Path tempPath;
+    private final ScheduledThreadPoolExecutor executor;
+    private final AtomicReference<Map<String, AutoCompressor.CompressionRule>> pending = new AtomicReference<>();
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private volatile String baseConfig;
+
+    // Any number of persisters can share one executor, it is owned and shut down by whoever created it
+    public RulePersister(Logger logger, File configFile, FileConfiguration config, ScheduledThreadPoolExecutor executor) {
+        this.logger = logger;
+        this.configPath = configFile.toPath();
+        this.tempPath = configPath.resolveSibling(configFile.getName() + ".tmp");
+        this.executor = executor;
+        setBaseConfig(config);
+    }
+
+    public static ScheduledThreadPoolExecutor createExecutor(String threadName) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return executor;
+    }
+
+    // Everything in the file except the rules, written back unchanged with every save
+    public void setBaseConfig(FileConfiguration config) {
+        YamlConfiguration base = new YamlConfiguration();
+        try {
+            base.loadFromString(config.saveToString());
+        } catch (InvalidConfigurationException e) {
+            // Can't happen, the text was just produced by a configuration
+            throw new IllegalStateException(e);
+        }
+        base.set("rules", null);
+        baseConfig = base.saveToString();
+    }
+
+    // Main thread: queue the given rules to be written
+    public void markDirty(RuleSet rules) {
+        pending.set(rules.getRules());
+        if (writeScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::writePending, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Writes whatever is pending now instead of after the delay
+    public void flush() {
+        executor.execute(this::writePending);
+    }
+
+    private void writePending() {
+        writeScheduled.set(false);
+        Map<String, AutoCompressor.CompressionRule> rules = pending.getAndSet(null);
+        if (rules == null) return;
+
+        try {
+            write(serialize(rules));
+        } catch (IOException | InvalidConfigurationException e) {
+            logger.log(Level.SEVERE, "Could not save compression rules to " + configPath, e);
+        }
+    }
+
+    private String serialize(Map<String, AutoCompressor.CompressionRule> rules) throws InvalidConfigurationException {
+        YamlConfiguration output = new YamlConfiguration();
+        output.loadFromString(baseConfig);
+
+        for (Map.Entry<String, AutoCompressor.CompressionRule> entry : rules.entrySet()) {
+            String key = entry.getKey();
+            AutoCompressor.CompressionRule rule = entry.getValue();
+
+            output.set("rules." + key + ".input.material", rule.getInputMaterial().toString());
+            output.set("rules." + key + ".input.amount", rule.getInputAmount());
+            output.set("rules." + key + ".output.material", rule.getOutputMaterial().toString());
+            output.set("rules." + key + ".output.amount", rule.getOutputAmount());
+            output.set("rules." + key + ".worlds", rule.getWorlds());
+            output.set("rules." + key + ".permission", rule.getPermission());
+
+            ItemMatch match = rule.getInputMatch();
+            if (match != null) {
+                String path = "rules." + key + ".input.match.";
+                output.set(path + "name", match.getName() == null ? null : match.getName().replace('\u00a7', '&'));
+                output.set(path + "custom-model-data", match.getCustomModelData());
+                output.set(path + "data-keys", match.getDataKeys().isEmpty() ? null : match.getDataKeys());
+                for (Map.Entry<String, Integer> enchantment : match.getEnchantments().entrySet()) {
+                    output.set(path + "enchantments." + enchantment.getKey(), enchantment.getValue());
+                }
+            }
+        }
+        return output.saveToString();
+    }
+
+    private void write(String text) throws IOException {
+        Files.createDirectories(configPath.getParent());
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            // Make sure the data is on disk before the rename makes it the real config
+            channel.force(true);
+        }
+
+        try {
+            Files.move(tempPath, configPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, configPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
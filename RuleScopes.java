@@ -0,0 +1,138 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.persistence.PersistentDataType;
+import org.examplez.autocompressor.core.RuleIndex;
+import org.examplez.autocompressor.core.RuleMask;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Which rules apply to each player: the rule's worlds, its permission and the player's own on/off toggle.
+// The result is kept as a RuleMask over the player's compiled rules and only built again after a world
+// change, a toggle or a rule change, so passes never check a permission. Bukkit has no event for changed
+// permissions, so those are also looked at again once the recheck interval has passed.
+public class RuleScopes implements Listener {
+
+    private final NamespacedKey disabledKey;
+    private final boolean rulePermissions;
+    private final long recheckMillis;
+    private final Map<UUID, Scope> players = new ConcurrentHashMap<>();
+    private final Map<UUID, Scope> worlds = new ConcurrentHashMap<>();
+
+    public RuleScopes(AutoCompressor plugin, boolean rulePermissions, long recheckSeconds) {
+        this.disabledKey = new NamespacedKey(plugin, "compression-disabled");
+        this.rulePermissions = rulePermissions;
+        this.recheckMillis = Math.max(1, recheckSeconds) * 1000L;
+    }
+
+    // The rules that may fire for the player, rules being their effective set and serverRules the server's
+    // part of it. On the thread owning the player.
+    public RuleMask mask(Player player, RuleSet rules, RuleSet serverRules) {
+        Scope scope = players.get(player.getUniqueId());
+        long now = System.currentTimeMillis();
+        if (scope != null && scope.mask.index() == rules.getIndex() && now - scope.checkedAt < recheckMillis) {
+            return scope.mask;
+        }
+
+        // Keep the old mask when nothing changed, caches keyed on it stay valid
+        RuleMask mask = build(player, player.getWorld(), rules, serverRules);
+        if (mask.sameAs(scope == null ? null : scope.mask)) {
+            mask = scope.mask;
+        }
+        players.put(player.getUniqueId(), new Scope(mask, now));
+        return mask;
+    }
+
+    // The rules that may fire in a marked container. There is no player to check permissions on, so rules
+    // with a permission of their own never run in containers.
+    public RuleMask mask(World world, RuleSet rules) {
+        Scope scope = worlds.get(world.getUID());
+        if (scope != null && scope.mask.index() == rules.getIndex()) {
+            return scope.mask;
+        }
+
+        scope = new Scope(build(null, world, rules, null), 0);
+        worlds.put(world.getUID(), scope);
+        return scope.mask;
+    }
+
+    public boolean isDisabled(Player player) {
+        return player.getPersistentDataContainer().has(disabledKey, PersistentDataType.BYTE);
+    }
+
+    // Turns compression off or back on for the player, returns whether it's on now
+    public boolean toggle(Player player) {
+        boolean enable = isDisabled(player);
+        if (enable) {
+            player.getPersistentDataContainer().remove(disabledKey);
+        } else {
+            player.getPersistentDataContainer().set(disabledKey, PersistentDataType.BYTE, (byte) 1);
+        }
+        players.remove(player.getUniqueId());
+        return enable;
+    }
+
+    // Permissions may have changed, build every mask again on next use
+    public void invalidate() {
+        players.clear();
+    }
+
+    private RuleMask build(Player player, World world, RuleSet rules, RuleSet serverRules) {
+        RuleIndex index = rules.getIndex();
+        long[] bits = RuleMask.newBitset(index);
+        if (player != null && isDisabled(player)) {
+            return new RuleMask(index, bits);
+        }
+
+        for (int rule = 0; rule < index.ruleCount(); rule++) {
+            String id = index.ruleId(rule);
+            AutoCompressor.CompressionRule compressionRule = rules.getRules().get(id);
+            if (compressionRule != null && applies(player, world, id, compressionRule, serverRules)) {
+                bits[rule >> 6] |= 1L << rule;
+            }
+        }
+        return new RuleMask(index, bits);
+    }
+
+    private boolean applies(Player player, World world, String id, AutoCompressor.CompressionRule rule, RuleSet serverRules) {
+        if (rule.getWorlds() != null && !rule.getWorlds().contains(world.getName())) return false;
+
+        String permission = rule.getPermission();
+        if (permission == null && rulePermissions && player != null
+                && (serverRules == null || serverRules.getRules().containsKey(id))) {
+            // Only server rules, a player's own rules are theirs to use. Layering never lets an own rule take
+            // a server rule's id, so the id tells them apart.
+            permission = "autocompressor.rule." + id.toLowerCase();
+        }
+        if (permission == null) return true;
+        return player != null && player.hasPermission(permission);
+    }
+
+    @EventHandler
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        players.remove(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        players.remove(event.getPlayer().getUniqueId());
+    }
+
+    private static final class Scope {
+        private final RuleMask mask;
+        private final long checkedAt;
+
+        private Scope(RuleMask mask, long checkedAt) {
+            this.mask = mask;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.Material;
+import org.examplez.autocompressor.core.RuleDefinition;
+import org.examplez.autocompressor.core.RuleIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// The compression rules together with their compiled index, never changed after construction.
+// Edits build a new set and swap it in, so any thread can keep using the set it read without locking.
+public final class RuleSet {
+
+    public static final RuleSet EMPTY = new RuleSet(Collections.emptyMap());
+
+    private final Map<String, AutoCompressor.CompressionRule> rules;
+    private final VariantMaterialTable materials;
+    private final RuleIndex index;
+
+    public RuleSet(Map<String, AutoCompressor.CompressionRule> rules) {
+        Map<String, AutoCompressor.CompressionRule> copy = new LinkedHashMap<>();
+        // Every distinct custom input item becomes a material of its own
+        Set<Long> fingerprints = new HashSet<>();
+        List<Material> variantMaterials = new ArrayList<>();
+        List<ItemMatch> variantMatches = new ArrayList<>();
+        for (Map.Entry<String, AutoCompressor.CompressionRule> entry : rules.entrySet()) {
+            // Rules are mutable while being edited in the menu, keep our own copies
+            AutoCompressor.CompressionRule rule = entry.getValue();
+            copy.put(entry.getKey(), rule.copy());
+
+            ItemMatch match = rule.getInputMatch();
+            if (match != null && rule.getInputMaterial() != null && fingerprints.add(match.fingerprint(rule.getInputMaterial()))) {
+                variantMaterials.add(rule.getInputMaterial());
+                variantMatches.add(match);
+            }
+        }
+        VariantMaterialTable materials = new VariantMaterialTable(variantMaterials, variantMatches);
+
+        List<RuleDefinition> definitions = new ArrayList<>();
+        for (Map.Entry<String, AutoCompressor.CompressionRule> entry : copy.entrySet()) {
+            AutoCompressor.CompressionRule rule = entry.getValue();
+            int input = rule.getInputMatch() == null || rule.getInputMaterial() == null
+                    ? BukkitMaterialTable.key(rule.getInputMaterial())
+                    : materials.variantKey(rule.getInputMatch().fingerprint(rule.getInputMaterial()));
+            definitions.add(new RuleDefinition(entry.getKey(), input, rule.getInputAmount(),
+                    BukkitMaterialTable.key(rule.getOutputMaterial()), rule.getOutputAmount()));
+        }
+
+        this.rules = Collections.unmodifiableMap(copy);
+        this.materials = materials;
+        this.index = new RuleIndex(definitions, materials);
+    }
+
+    public Map<String, AutoCompressor.CompressionRule> getRules() {
+        return rules;
+    }
+
+    public RuleIndex getIndex() {
+        return index;
+    }
+
+    public VariantMaterialTable getMaterials() {
+        return materials;
+    }
+
+    public RuleSet with(String id, AutoCompressor.CompressionRule rule) {
+        Map<String, AutoCompressor.CompressionRule> changed = new LinkedHashMap<>(rules);
+        changed.put(id, rule);
+        return new RuleSet(changed);
+    }
+
+    // These rules with another set on top. Its rules only add to ours: one with the id of one of ours is left
+    // out, it would take the place of our rule and drop its worlds and permission.
+    public RuleSet layer(RuleSet top) {
+        Map<String, AutoCompressor.CompressionRule> layered = new LinkedHashMap<>(rules);
+        for (Map.Entry<String, AutoCompressor.CompressionRule> entry : top.rules.entrySet()) {
+            layered.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        return new RuleSet(layered);
+    }
+
+    public RuleSet without(String id) {
+        Map<String, AutoCompressor.CompressionRule> changed = new LinkedHashMap<>(rules);
+        changed.remove(id);
+        return new RuleSet(changed);
+    }
+}
@@ -0,0 +1,40 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+// Where the plugin's tasks run. On Bukkit and Paper everything runs on the main thread. On Folia there is
+// no main thread: a player's work runs on the thread that owns the player, a block's on the thread that
+// owns its region and everything else on the global region thread.
+public interface SchedulerBackend {
+
+    static SchedulerBackend detect(Plugin plugin) {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return new FoliaSchedulerBackend(plugin);
+        } catch (ClassNotFoundException e) {
+            return new BukkitSchedulerBackend(plugin);
+        }
+    }
+
+    // True on Folia, where the global task can't touch players or blocks
+    boolean isRegionThreaded();
+
+    // Not tied to a player or a place
+    Task runGlobal(Runnable task, long delay, long period);
+
+    void runGlobal(Runnable task);
+
+    void runAsync(Runnable task);
+
+    // Stops by itself once the player has left
+    Task runForPlayer(Player player, Runnable task, long delay, long period);
+
+    // Once, on the thread owning the chunk
+    void runAt(World world, int chunkX, int chunkZ, Runnable task, long delay);
+
+    interface Task {
+        void cancel();
+    }
+}
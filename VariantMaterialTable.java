@@ -0,0 +1,122 @@
+package org.examplez.autocompressor;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.examplez.autocompressor.core.MaterialTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Paper's materials plus a key for every custom input item the rules ask for, so the core treats a
+// named ore as a material of its own. Keys up to the Material count are the plain materials, the one
+// after that stands for custom items no rule wants, and the variants follow. A custom item is checked
+// against its material's variants, the most specific first, and only for materials that have one;
+// everything else never looks at item meta beyond hasItemMeta(). Rules find their variant by fingerprint.
+public final class VariantMaterialTable implements MaterialTable {
+
+    private final BukkitMaterialTable base = BukkitMaterialTable.INSTANCE;
+    private final int unmatchedKey = base.size();
+    private final long[] fingerprints;
+    private final int[] keysByFingerprint;
+    private final Material[] variantMaterials;
+    private final ItemMatch[] variantMatches;
+    // Per Material ordinal, variant indexes from the most to the least specific match, null when there are none
+    private final int[][] candidates = new int[base.size()][];
+
+    public VariantMaterialTable(List<Material> materials, List<ItemMatch> matches) {
+        this.variantMaterials = materials.toArray(new Material[0]);
+        this.variantMatches = matches.toArray(new ItemMatch[0]);
+
+        long[] unsorted = new long[variantMaterials.length];
+        Integer[] order = new Integer[variantMaterials.length];
+        for (int i = 0; i < unsorted.length; i++) {
+            unsorted[i] = variantMatches[i].fingerprint(variantMaterials[i]);
+            order[i] = i;
+        }
+
+        // Stable sort, equally specific matches keep the order of the rules
+        Integer[] bySpecificity = order.clone();
+        Arrays.sort(bySpecificity, (a, b) -> Integer.compare(variantMatches[b].specificity(), variantMatches[a].specificity()));
+        for (int variant : bySpecificity) {
+            int material = variantMaterials[variant].ordinal();
+            int[] current = candidates[material];
+            int[] grown = current == null ? new int[1] : Arrays.copyOf(current, current.length + 1);
+            grown[grown.length - 1] = variant;
+            candidates[material] = grown;
+        }
+
+        Arrays.sort(order, (a, b) -> Long.compare(unsorted[a], unsorted[b]));
+
+        this.fingerprints = new long[unsorted.length];
+        this.keysByFingerprint = new int[unsorted.length];
+        for (int i = 0; i < order.length; i++) {
+            fingerprints[i] = unsorted[order[i]];
+            keysByFingerprint[i] = unmatchedKey + 1 + order[i];
+        }
+    }
+
+    public static VariantMaterialTable plain() {
+        return new VariantMaterialTable(new ArrayList<>(), new ArrayList<>());
+    }
+
+    // Key for an inventory item: -1 for empty slots, the Material ordinal for items without meta,
+    // a variant key for custom items a rule asks for and unmatchedKey() for other custom items
+    public int key(ItemStack item) {
+        if (item == null || item.getType().isAir()) return -1;
+
+        int key = item.getType().ordinal();
+        if (!item.hasItemMeta()) return key;
+
+        int[] variants = candidates[key];
+        if (variants == null) return unmatchedKey;
+
+        ItemMeta meta = item.getItemMeta();
+        for (int variant : variants) {
+            if (variantMatches[variant].matches(meta)) {
+                return unmatchedKey + 1 + variant;
+            }
+        }
+        return unmatchedKey;
+    }
+
+    public int variantKey(long fingerprint) {
+        int found = Arrays.binarySearch(fingerprints, fingerprint);
+        return found >= 0 ? keysByFingerprint[found] : unmatchedKey;
+    }
+
+    public int unmatchedKey() {
+        return unmatchedKey;
+    }
+
+    public boolean isVariant(int key) {
+        return key > unmatchedKey;
+    }
+
+    public Material material(int key) {
+        return isVariant(key) ? variantMaterials[key - unmatchedKey - 1] : BukkitMaterialTable.material(key);
+    }
+
+    // The custom item a variant key stands for, null for plain materials
+    public ItemMatch match(int key) {
+        return isVariant(key) ? variantMatches[key - unmatchedKey - 1] : null;
+    }
+
+    @Override
+    public int size() {
+        return unmatchedKey + 1 + variantMaterials.length;
+    }
+
+    @Override
+    public int maxStackSize(int key) {
+        return key == unmatchedKey ? 64 : material(key).getMaxStackSize();
+    }
+
+    @Override
+    public String name(int key) {
+        if (key == unmatchedKey) return "CUSTOM_ITEM";
+        if (isVariant(key)) return material(key) + "[" + match(key).describe() + "]";
+        return base.name(key);
+    }
+}
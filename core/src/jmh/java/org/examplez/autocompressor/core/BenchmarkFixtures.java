@@ -0,0 +1,52 @@
+package org.examplez.autocompressor.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Rule sets and inventories for the benchmarks, built on synthetic materials so no server is needed
+final class BenchmarkFixtures {
+
+    // Roughly the number of item materials on a current server
+    static final MaterialTable MATERIALS = SimpleMaterialTable.uniform(1400, 64);
+
+    private BenchmarkFixtures() {
+    }
+
+    // Independent 9 -> 1 rules, each with its own input and output material
+    static List<RuleDefinition> rules(int count) {
+        if (count * 2 > MATERIALS.size()) {
+            throw new IllegalArgumentException("Not enough materials for " + count + " rules");
+        }
+
+        List<RuleDefinition> rules = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rules.add(new RuleDefinition("RULE_" + i, i * 2, 9, i * 2 + 1, 1));
+        }
+        return rules;
+    }
+
+    // Materials no rule uses, to fill the rest of an inventory
+    static int filler(int ruleCount, int i) {
+        return ruleCount * 2 + i % (MATERIALS.size() - ruleCount * 2);
+    }
+
+    // A player inventory where fill is the share of occupied slots and half of those hold rule inputs.
+    // Fragmented inventories spread the same materials over small stacks of 1 to 8 items.
+    static ArraySlotInventory inventory(List<RuleDefinition> rules, double fill, boolean fragmented, long seed) {
+        Random random = new Random(seed);
+        ArraySlotInventory inventory = new ArraySlotInventory(41, 36);
+
+        for (int slot = 0; slot < 41; slot++) {
+            if (random.nextDouble() >= fill) continue;
+
+            int amount = fragmented ? 1 + random.nextInt(8) : 64;
+            if (random.nextBoolean() && !rules.isEmpty()) {
+                inventory.set(slot, rules.get(random.nextInt(rules.size())).getInputMaterial(), amount, true);
+            } else {
+                inventory.set(slot, filler(rules.size(), random.nextInt(1024)), amount, true);
+            }
+        }
+        return inventory;
+    }
+}
@@ -0,0 +1,55 @@
+package org.examplez.autocompressor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cost of one compression pass over one player inventory
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionEngineBenchmark {
+
+    @Param({"1", "10", "60", "500"})
+    public int ruleCount;
+
+    @Param({"0.25", "0.5", "1.0"})
+    public double fill;
+
+    @Param({"false", "true"})
+    public boolean fragmented;
+
+    private RuleIndex index;
+    private ArraySlotInventory inventory;
+
+    @Setup
+    public void setup() {
+        List<RuleDefinition> rules = BenchmarkFixtures.rules(ruleCount);
+        index = new RuleIndex(rules, BenchmarkFixtures.MATERIALS);
+        inventory = BenchmarkFixtures.inventory(rules, fill, fragmented, 42L);
+    }
+
+    @Benchmark
+    public InventorySnapshot snapshot() {
+        return InventorySnapshot.of(index, inventory);
+    }
+
+    @Benchmark
+    public CompressionPlan compress() {
+        return CompressionEngine.compress(index, InventorySnapshot.of(index, inventory), OverflowPolicy.PARTIAL);
+    }
+}
@@ -0,0 +1,60 @@
+package org.examplez.autocompressor.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Compiling the rules and looking up the rules for a material
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleIndexBenchmark {
+
+    @Param({"1", "10", "60", "500"})
+    public int ruleCount;
+
+    private List<RuleDefinition> rules;
+    private RuleIndex index;
+    private int[] lookups;
+
+    @Setup
+    public void setup() {
+        rules = BenchmarkFixtures.rules(ruleCount);
+        index = new RuleIndex(rules, BenchmarkFixtures.MATERIALS);
+
+        // Half rule inputs, half materials no rule uses, like a typical inventory
+        lookups = new int[64];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = i % 2 == 0 ? rules.get(i % rules.size()).getInputMaterial() : BenchmarkFixtures.filler(ruleCount, i);
+        }
+    }
+
+    @Benchmark
+    public RuleIndex compile() {
+        return new RuleIndex(rules, BenchmarkFixtures.MATERIALS);
+    }
+
+    // 64 lookups per operation
+    @Benchmark
+    public void lookup(Blackhole blackhole) {
+        for (int material : lookups) {
+            int id = index.denseId(material);
+            blackhole.consume(id >= 0 ? index.rulesFor(id) : null);
+        }
+    }
+}
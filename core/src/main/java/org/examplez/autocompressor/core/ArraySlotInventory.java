@@ -0,0 +1,102 @@
+package org.examplez.autocompressor.core;
+
+import java.util.Arrays;
+
+// Slot inventory held in plain arrays, used by the simulator and the benchmarks in place of a real inventory
+public final class ArraySlotInventory implements SlotInventory {
+
+    private final int[] materials;
+    private final int[] amounts;
+    private final boolean[] plain;
+    private final int storageSize;
+
+    public ArraySlotInventory(int size, int storageSize) {
+        this.materials = new int[size];
+        this.amounts = new int[size];
+        this.plain = new boolean[size];
+        this.storageSize = Math.min(storageSize, size);
+        Arrays.fill(materials, EMPTY);
+    }
+
+    public void set(int slot, int materialKey, int amount, boolean plainItem) {
+        if (materialKey == EMPTY || amount <= 0) {
+            materials[slot] = EMPTY;
+            amounts[slot] = 0;
+            plain[slot] = false;
+        } else {
+            materials[slot] = materialKey;
+            amounts[slot] = amount;
+            plain[slot] = plainItem;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(materials, EMPTY);
+        Arrays.fill(amounts, 0);
+        Arrays.fill(plain, false);
+    }
+
+    // Adds plain items the way a pickup would: topping up matching stacks first, then empty storage slots.
+    // Returns what didn't fit.
+    public int add(int materialKey, int amount, int maxStackSize) {
+        for (int slot = 0; slot < storageSize && amount > 0; slot++) {
+            if (materials[slot] != materialKey || !plain[slot] || amounts[slot] >= maxStackSize) continue;
+
+            int added = Math.min(maxStackSize - amounts[slot], amount);
+            amounts[slot] += added;
+            amount -= added;
+        }
+        for (int slot = 0; slot < storageSize && amount > 0; slot++) {
+            if (materials[slot] != EMPTY) continue;
+
+            int added = Math.min(maxStackSize, amount);
+            set(slot, materialKey, added, true);
+            amount -= added;
+        }
+        return amount;
+    }
+
+    // Writes the final slot layout of a plan taken from this inventory. Returns false and leaves the
+    // inventory alone when it changed since the plan's snapshot.
+    public boolean apply(CompressionPlan plan) {
+        if (!plan.matches(this)) return false;
+
+        RuleIndex index = plan.index();
+        for (int slot = 0; slot < materials.length; slot++) {
+            if (!plan.isSlotChanged(slot)) continue;
+
+            int material = plan.slotMaterial(slot);
+            if (material == RuleIndex.EMPTY || plan.slotAmount(slot) == 0) {
+                set(slot, EMPTY, 0, false);
+            } else {
+                set(slot, index.materialKey(material), plan.slotAmount(slot), plan.isSlotPlain(slot));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return materials.length;
+    }
+
+    @Override
+    public int storageSize() {
+        return storageSize;
+    }
+
+    @Override
+    public int materialKey(int slot) {
+        return materials[slot];
+    }
+
+    @Override
+    public int amount(int slot) {
+        return amounts[slot];
+    }
+
+    @Override
+    public boolean isPlain(int slot) {
+        return plain[slot];
+    }
+}
@@ -0,0 +1,110 @@
+package org.examplez.autocompressor.core;
+
+// Plans compression for an inventory snapshot. This is a pure function of the rules and the snapshot,
+// nothing is touched until the caller applies the plan. Only rules whose input material is present are looked at,
+// and every rule converts all the batches it can in one go.
+//
+// Materials are visited in increasing dense id order, which RuleIndex makes topological. Output is counted
+// as present as soon as it's produced, so a chain like cobblestone -> compressed -> double compressed is
+// resolved to its end in a single pass.
+//
+// A snapshot restricted to a RuleMask only visits materials some rule in the mask takes, and only fires
+// those rules.
+public final class CompressionEngine {
+
+    private CompressionEngine() {
+    }
+
+    // Returns null when nothing can be compressed
+    public static CompressionPlan compress(RuleIndex index, InventorySnapshot snapshot, OverflowPolicy overflowPolicy) {
+        if (snapshot.presentCount() == 0) {
+            return null;
+        }
+
+        RuleMask mask = snapshot.ruleMask();
+        if (mask != null && mask.isEmpty()) {
+            return null;
+        }
+
+        CompressionPlan plan = null;
+        long[] pending = snapshot.presentMaterials().clone();
+        if (mask != null) {
+            long[] inputs = mask.inputs();
+            for (int word = 0; word < pending.length; word++) {
+                pending[word] &= inputs[word];
+            }
+        }
+
+        for (int material = nextSetBit(pending, 0); material >= 0; material = nextSetBit(pending, material + 1)) {
+            int available = plan == null ? snapshot.count(material) : plan.count(material);
+
+            for (int rule : index.rulesFor(material)) {
+                int needed = index.inputAmount(rule);
+                if (available < needed || (mask != null && !mask.isActive(rule))) continue;
+
+                if (plan == null) {
+                    plan = new CompressionPlan(index, snapshot);
+                }
+
+                int batches = available / needed;
+                if (overflowPolicy != OverflowPolicy.DROP) {
+                    int fitting = fittingBatches(plan, rule, batches, overflowPolicy);
+                    if (fitting < batches) {
+                        plan.markLimited();
+                    }
+                    batches = fitting;
+                    if (batches == 0) continue;
+                }
+
+                int output = index.output(rule);
+                plan.consume(material, batches * needed);
+                int leftover = plan.place(output, batches * index.outputAmount(rule));
+                if (leftover > 0) {
+                    plan.addOverflow(output, leftover);
+                }
+                plan.addBatches(rule, batches);
+                available -= batches * needed;
+                if (mask == null || mask.takes(output)) {
+                    pending[output >> 6] |= 1L << output;
+                }
+            }
+        }
+
+        if (plan == null || plan.isEmpty()) {
+            return null;
+        }
+        return plan;
+    }
+
+    // Largest batch count, at most the given one, whose output fits once its input has been taken out
+    private static int fittingBatches(CompressionPlan plan, int rule, int batches, OverflowPolicy overflowPolicy) {
+        RuleIndex index = plan.index();
+        int needed = index.inputAmount(rule);
+        int produced = index.outputAmount(rule);
+
+        while (batches > 0) {
+            int room = plan.roomAfterConsuming(index.input(rule), batches * needed, index.output(rule));
+            int fitting = room / produced;
+            if (fitting >= batches) break;
+            if (overflowPolicy == OverflowPolicy.HOLD) return 0;
+
+            // Consuming less frees fewer slots, so check the smaller count again
+            batches = fitting;
+        }
+        return batches;
+    }
+
+    private static int nextSetBit(long[] words, int from) {
+        int word = from >> 6;
+        if (word >= words.length) return -1;
+
+        long bits = words[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == words.length) return -1;
+            bits = words[word];
+        }
+    }
+}
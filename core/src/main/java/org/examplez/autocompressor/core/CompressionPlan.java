@@ -0,0 +1,181 @@
+package org.examplez.autocompressor.core;
+
+// Result of planning one inventory: the final material and amount of every slot, how many batches each
+// rule compressed and how much output didn't fit. Applying it means writing the slots that changed,
+// intermediate chain output never shows up in them.
+public final class CompressionPlan {
+
+    private final RuleIndex index;
+    private final InventorySnapshot snapshot;
+    private final int[] slotMaterials;
+    private final int[] slotAmounts;
+    private final boolean[] slotPlain;
+    private final int[] counts;
+    private final int[] batches;
+    private final int[] overflow;
+    private boolean compressed;
+    private boolean limited;
+
+    CompressionPlan(RuleIndex index, InventorySnapshot snapshot) {
+        this.index = index;
+        this.snapshot = snapshot;
+        this.slotMaterials = new int[snapshot.size()];
+        this.slotAmounts = new int[snapshot.size()];
+        this.slotPlain = new boolean[snapshot.size()];
+        for (int slot = 0; slot < slotAmounts.length; slot++) {
+            slotMaterials[slot] = snapshot.material(slot);
+            slotAmounts[slot] = snapshot.amount(slot);
+            slotPlain[slot] = snapshot.isPlain(slot);
+        }
+        this.counts = new int[index.materialCount()];
+        for (int id = 0; id < counts.length; id++) {
+            counts[id] = snapshot.count(id);
+        }
+        this.batches = new int[index.ruleCount()];
+        this.overflow = new int[index.materialCount()];
+    }
+
+    int count(int material) {
+        return counts[material];
+    }
+
+    // Takes the given amount of a material out of the slots, first slot first
+    void consume(int material, int amount) {
+        counts[material] -= amount;
+        for (int slot = 0; slot < slotAmounts.length && amount > 0; slot++) {
+            if (slotMaterials[slot] != material || slotAmounts[slot] == 0) continue;
+
+            int taken = Math.min(slotAmounts[slot], amount);
+            slotAmounts[slot] -= taken;
+            amount -= taken;
+            if (slotAmounts[slot] == 0) {
+                slotMaterials[slot] = RuleIndex.EMPTY;
+            }
+        }
+    }
+
+    // Room for the output material once the given amount of the input material has been consumed
+    int roomAfterConsuming(int input, int consumed, int output) {
+        int maxStack = index.maxStackSize(output);
+        int room = 0;
+
+        for (int slot = 0; slot < slotAmounts.length; slot++) {
+            int material = slotMaterials[slot];
+            int amount = slotAmounts[slot];
+            if (material == input && consumed > 0) {
+                int taken = Math.min(amount, consumed);
+                consumed -= taken;
+                amount -= taken;
+            }
+            if (slot >= snapshot.storageSize()) continue;
+
+            if (amount == 0) {
+                room += maxStack;
+            } else if (material == output && slotPlain[slot] && amount < maxStack) {
+                room += maxStack - amount;
+            }
+        }
+        return room;
+    }
+
+    // Places the material the way Inventory#addItem would: topping up matching stacks first, then empty slots.
+    // Returns what didn't fit.
+    int place(int material, int amount) {
+        counts[material] += amount;
+        int maxStack = index.maxStackSize(material);
+        int storageSize = snapshot.storageSize();
+
+        for (int slot = 0; slot < storageSize && amount > 0; slot++) {
+            if (slotMaterials[slot] != material || !slotPlain[slot] || slotAmounts[slot] >= maxStack) continue;
+
+            int placed = Math.min(maxStack - slotAmounts[slot], amount);
+            slotAmounts[slot] += placed;
+            amount -= placed;
+        }
+        for (int slot = 0; slot < storageSize && amount > 0; slot++) {
+            if (slotAmounts[slot] != 0) continue;
+
+            int placed = Math.min(maxStack, amount);
+            slotMaterials[slot] = material;
+            slotAmounts[slot] = placed;
+            slotPlain[slot] = true;
+            amount -= placed;
+        }
+        counts[material] -= amount;
+        return amount;
+    }
+
+    void addBatches(int rule, int count) {
+        batches[rule] += count;
+        compressed = true;
+    }
+
+    void addOverflow(int material, int amount) {
+        overflow[material] += amount;
+    }
+
+    void markLimited() {
+        limited = true;
+    }
+
+    public RuleIndex index() {
+        return index;
+    }
+
+    public InventorySnapshot snapshot() {
+        return snapshot;
+    }
+
+    public boolean isEmpty() {
+        return !compressed;
+    }
+
+    // Whether the inventory still looks the way the snapshot saw it, the plan is stale otherwise. Slots
+    // holding something no rule uses only need to stay occupied, a plan never touches them.
+    public boolean matches(SlotInventory inventory) {
+        if (inventory.size() != snapshot.size()) return false;
+
+        for (int slot = 0; slot < snapshot.size(); slot++) {
+            int key = inventory.materialKey(slot);
+            int id = key == SlotInventory.EMPTY || inventory.amount(slot) <= 0 ? RuleIndex.EMPTY : index.denseId(key);
+            if (id != snapshot.material(slot)) return false;
+            if (id >= 0 && inventory.amount(slot) != snapshot.amount(slot)) return false;
+        }
+        return true;
+    }
+
+    public boolean isSlotChanged(int slot) {
+        return slotAmounts[slot] != snapshot.amount(slot) || slotMaterials[slot] != snapshot.material(slot);
+    }
+
+    // Net change of the material's total, dropped overflow included
+    public int change(int material) {
+        return counts[material] + overflow[material] - snapshot.count(material);
+    }
+
+    // True when some batches were held back because their output didn't fit
+    public boolean isLimited() {
+        return limited;
+    }
+
+    public int slotMaterial(int slot) {
+        return slotMaterials[slot];
+    }
+
+    public boolean isSlotPlain(int slot) {
+        return slotPlain[slot];
+    }
+
+    public int slotAmount(int slot) {
+        return slotAmounts[slot];
+    }
+
+    public int batches(int rule) {
+        return batches[rule];
+    }
+
+    // Output that didn't fit, only ever set with OverflowPolicy.DROP
+    public int overflow(int material) {
+        return overflow[material];
+    }
+}
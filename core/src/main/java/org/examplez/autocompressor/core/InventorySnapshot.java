@@ -0,0 +1,111 @@
+package org.examplez.autocompressor.core;
+
+import java.util.Arrays;
+
+// One copy of an inventory's contents reduced to rule material ids and amounts.
+// The per-material histogram is filled in the same pass, so the engine never has to scan the slots
+// for a material that isn't there.
+public final class InventorySnapshot {
+
+    private final RuleIndex index;
+    private final int[] materials;
+    private final int[] amounts;
+    private final boolean[] plain;
+    private final int storageSize;
+    private final int[] counts;
+    private final long[] presentMaterials;
+    private int presentCount;
+    private RuleMask ruleMask;
+
+    // Empty snapshot to be filled with add(), each slot at most once.
+    // Outputs are only placed in the first storageSize slots, the rest (armor, off hand) are only taken from.
+    public InventorySnapshot(RuleIndex index, int size, int storageSize) {
+        this.index = index;
+        this.materials = new int[size];
+        this.amounts = new int[size];
+        this.plain = new boolean[size];
+        this.storageSize = Math.min(storageSize, size);
+        this.counts = new int[index.materialCount()];
+        this.presentMaterials = new long[(index.materialCount() + 63) >> 6];
+        Arrays.fill(materials, RuleIndex.EMPTY);
+    }
+
+    public static InventorySnapshot of(RuleIndex index, SlotInventory inventory) {
+        InventorySnapshot snapshot = new InventorySnapshot(index, inventory.size(), inventory.storageSize());
+        for (int slot = 0; slot < inventory.size(); slot++) {
+            int materialKey = inventory.materialKey(slot);
+            if (materialKey != SlotInventory.EMPTY) {
+                snapshot.add(slot, materialKey, inventory.amount(slot), inventory.isPlain(slot));
+            }
+        }
+        return snapshot;
+    }
+
+    // Outputs only stack onto plain slots, meaning items without meta on Paper
+    public void add(int slot, int materialKey, int amount, boolean plainItem) {
+        if (amount <= 0) return;
+
+        int id = index.denseId(materialKey);
+        materials[slot] = id;
+        amounts[slot] = amount;
+        if (id < 0) return;
+
+        plain[slot] = plainItem;
+        if (counts[id] == 0) {
+            presentMaterials[id >> 6] |= 1L << id;
+            presentCount++;
+        }
+        counts[id] += amount;
+    }
+
+    public RuleIndex index() {
+        return index;
+    }
+
+    public int size() {
+        return materials.length;
+    }
+
+    public int storageSize() {
+        return storageSize;
+    }
+
+    public int material(int slot) {
+        return materials[slot];
+    }
+
+    public int amount(int slot) {
+        return amounts[slot];
+    }
+
+    public boolean isPlain(int slot) {
+        return plain[slot];
+    }
+
+    public int count(int id) {
+        return counts[id];
+    }
+
+    // Number of distinct rule materials found in the inventory
+    public int presentCount() {
+        return presentCount;
+    }
+
+    // Limits planning to the mask's rules, set before the snapshot is handed to the engine
+    public void restrictTo(RuleMask ruleMask) {
+        if (ruleMask != null && ruleMask.index() != index) {
+            throw new IllegalArgumentException("Rule mask was built for a different rule index");
+        }
+        this.ruleMask = ruleMask;
+    }
+
+    // Null when every rule may fire
+    public RuleMask ruleMask() {
+        return ruleMask;
+    }
+
+    // Bit set of the rule materials found in the inventory, one bit per dense id
+    public long[] presentMaterials() {
+        return presentMaterials;
+    }
+}
@@ -0,0 +1,12 @@
+package org.examplez.autocompressor.core;
+
+// The platform's materials, identified by small non-negative integer keys (on Paper, the Material ordinal)
+public interface MaterialTable {
+
+    // Keys run from 0 to size() - 1
+    int size();
+
+    int maxStackSize(int key);
+
+    String name(int key);
+}
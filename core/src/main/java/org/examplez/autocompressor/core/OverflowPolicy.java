@@ -0,0 +1,11 @@
+package org.examplez.autocompressor.core;
+
+// What to do when the output of a compression doesn't fit in the inventory
+public enum OverflowPolicy {
+    // Compress only as many batches as there is room for
+    PARTIAL,
+    // Don't compress anything until all of the output fits
+    HOLD,
+    // Compress everything and drop what doesn't fit at the player's feet
+    DROP
+}
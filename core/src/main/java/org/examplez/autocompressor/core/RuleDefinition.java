@@ -0,0 +1,40 @@
+package org.examplez.autocompressor.core;
+
+// One compression rule as the core sees it: inputAmount of one material become outputAmount of another.
+// Materials are MaterialTable keys.
+public final class RuleDefinition {
+
+    private final String id;
+    private final int inputMaterial;
+    private final int inputAmount;
+    private final int outputMaterial;
+    private final int outputAmount;
+
+    public RuleDefinition(String id, int inputMaterial, int inputAmount, int outputMaterial, int outputAmount) {
+        this.id = id;
+        this.inputMaterial = inputMaterial;
+        this.inputAmount = inputAmount;
+        this.outputMaterial = outputMaterial;
+        this.outputAmount = outputAmount;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getInputMaterial() {
+        return inputMaterial;
+    }
+
+    public int getInputAmount() {
+        return inputAmount;
+    }
+
+    public int getOutputMaterial() {
+        return outputMaterial;
+    }
+
+    public int getOutputAmount() {
+        return outputAmount;
+    }
+}
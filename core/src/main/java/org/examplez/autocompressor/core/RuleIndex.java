@@ -0,0 +1,357 @@
+package org.examplez.autocompressor.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Compiled, read-only view of the compression rules.
+// Every material used by a rule gets a small dense id so the engine can work with plain int arrays,
+// and rules are looked up through a table indexed by material key instead of scanning all of them.
+//
+// Rules form a graph from input to output material. Rules that can't be used (bad amounts, or part of a
+// cycle such as A -> B -> A) are left out and reported through problems(). The dense ids of the remaining
+// materials follow a topological order, so a rule's output always has a higher id than its input and a
+// single pass over the ids in order compresses chains all the way down.
+public final class RuleIndex {
+
+    public static final int EMPTY = -1;
+    public static final int OTHER = -2;
+
+    private static final int[] NO_RULES = new int[0];
+
+    private final MaterialTable materialTable;
+    private final int[] denseIdByKey;
+    private final int[] materialKeys;
+    private final int[] maxStackSizes;
+
+    private final String[] ruleIds;
+    private final int[] ruleInputs;
+    private final int[] ruleInputAmounts;
+    private final int[] ruleOutputs;
+    private final int[] ruleOutputAmounts;
+    private final int[][] rulesByInput;
+    private final Map<String, Integer> rulesById = new HashMap<>();
+
+    // Net conversion from the start of a rule's chain, e.g. 81 cobblestone -> 1 compressed stone
+    private final int[] chainBases;
+    private final long[] chainBaseAmounts;
+    private final long[] chainOutputAmounts;
+
+    private final List<String> problems = new ArrayList<>();
+
+    public RuleIndex(Collection<RuleDefinition> rules, MaterialTable materialTable) {
+        this.materialTable = materialTable;
+        denseIdByKey = new int[materialTable.size()];
+        Arrays.fill(denseIdByKey, OTHER);
+
+        // Sorted by id so the compiled order never depends on iteration order
+        Map<String, RuleDefinition> candidates = new TreeMap<>();
+        for (RuleDefinition rule : rules) {
+            if (!isMaterial(rule.getInputMaterial()) || !isMaterial(rule.getOutputMaterial())) {
+                problems.add(rule.getId() + ": input and output material must both be set");
+            } else if (rule.getInputAmount() <= 0 || rule.getOutputAmount() <= 0) {
+                problems.add(rule.getId() + ": input and output amount must be at least 1");
+            } else {
+                candidates.put(rule.getId(), rule);
+            }
+        }
+
+        // Number the materials in first-seen order and build the material graph
+        List<Integer> seen = new ArrayList<>();
+        Map<Integer, Integer> seenIds = new HashMap<>();
+        for (RuleDefinition rule : candidates.values()) {
+            seenIds.computeIfAbsent(rule.getInputMaterial(), material -> { seen.add(material); return seen.size() - 1; });
+            seenIds.computeIfAbsent(rule.getOutputMaterial(), material -> { seen.add(material); return seen.size() - 1; });
+        }
+        List<List<Integer>> edges = new ArrayList<>();
+        for (int i = 0; i < seen.size(); i++) {
+            edges.add(new ArrayList<>());
+        }
+        for (RuleDefinition rule : candidates.values()) {
+            edges.get(seenIds.get(rule.getInputMaterial())).add(seenIds.get(rule.getOutputMaterial()));
+        }
+
+        // A rule whose input and output share a strongly connected component is part of a cycle
+        int[] components = stronglyConnectedComponents(edges);
+        List<String> acceptedIds = new ArrayList<>();
+        for (RuleDefinition rule : candidates.values()) {
+            int input = seenIds.get(rule.getInputMaterial());
+            int output = seenIds.get(rule.getOutputMaterial());
+            if (components[input] == components[output]) {
+                problems.add(rule.getId() + ": part of a compression cycle through " + cycleMaterials(components, input, seen));
+            } else {
+                acceptedIds.add(rule.getId());
+            }
+        }
+
+        // Topological order of the materials over the accepted rules (Kahn's algorithm)
+        int[] inDegree = new int[seen.size()];
+        List<List<Integer>> acceptedEdges = new ArrayList<>();
+        for (int i = 0; i < seen.size(); i++) {
+            acceptedEdges.add(new ArrayList<>());
+        }
+        for (String id : acceptedIds) {
+            RuleDefinition rule = candidates.get(id);
+            int output = seenIds.get(rule.getOutputMaterial());
+            acceptedEdges.get(seenIds.get(rule.getInputMaterial())).add(output);
+            inDegree[output]++;
+        }
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < seen.size(); i++) {
+            if (inDegree[i] == 0) ready.add(i);
+        }
+        List<Integer> materialList = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            int next = ready.poll();
+            int material = seen.get(next);
+            denseIdByKey[material] = materialList.size();
+            materialList.add(material);
+            for (int output : acceptedEdges.get(next)) {
+                if (--inDegree[output] == 0) ready.add(output);
+            }
+        }
+
+        materialKeys = new int[materialList.size()];
+        maxStackSizes = new int[materialList.size()];
+        for (int id = 0; id < materialKeys.length; id++) {
+            materialKeys[id] = materialList.get(id);
+            maxStackSizes[id] = materialTable.maxStackSize(materialKeys[id]);
+        }
+
+        // Rules are stored ordered by input id, which keeps producers ahead of the rules consuming their output
+        acceptedIds.sort((first, second) -> Integer.compare(
+                denseId(candidates.get(first).getInputMaterial()),
+                denseId(candidates.get(second).getInputMaterial())));
+        int materialCount = materialKeys.length;
+
+        int ruleCount = acceptedIds.size();
+        ruleIds = new String[ruleCount];
+        ruleInputs = new int[ruleCount];
+        ruleInputAmounts = new int[ruleCount];
+        ruleOutputs = new int[ruleCount];
+        ruleOutputAmounts = new int[ruleCount];
+        for (int rule = 0; rule < ruleCount; rule++) {
+            RuleDefinition definition = candidates.get(acceptedIds.get(rule));
+            ruleIds[rule] = acceptedIds.get(rule);
+            ruleInputs[rule] = denseId(definition.getInputMaterial());
+            ruleInputAmounts[rule] = definition.getInputAmount();
+            ruleOutputs[rule] = denseId(definition.getOutputMaterial());
+            ruleOutputAmounts[rule] = definition.getOutputAmount();
+            rulesById.put(ruleIds[rule], rule);
+        }
+
+        // Group rule indices by their input material
+        int[] rulesPerInput = new int[materialCount];
+        for (int rule = 0; rule < ruleCount; rule++) {
+            rulesPerInput[ruleInputs[rule]]++;
+        }
+        rulesByInput = new int[materialCount][];
+        for (int id = 0; id < materialCount; id++) {
+            rulesByInput[id] = rulesPerInput[id] == 0 ? NO_RULES : new int[rulesPerInput[id]];
+            rulesPerInput[id] = 0;
+        }
+        for (int rule = 0; rule < ruleCount; rule++) {
+            int input = ruleInputs[rule];
+            rulesByInput[input][rulesPerInput[input]++] = rule;
+        }
+
+        // Walk the materials in topological order. A material made by exactly one rule continues that rule's chain,
+        // anything else starts a new one.
+        int[] producers = new int[materialCount];
+        int[] producedBy = new int[materialCount];
+        for (int rule = 0; rule < ruleCount; rule++) {
+            producers[ruleOutputs[rule]]++;
+            producedBy[ruleOutputs[rule]] = rule;
+        }
+        int[] materialBases = new int[materialCount];
+        long[] materialBaseAmounts = new long[materialCount];
+        long[] materialUnits = new long[materialCount];
+        for (int id = 0; id < materialCount; id++) {
+            materialBases[id] = id;
+            materialBaseAmounts[id] = 1;
+            materialUnits[id] = 1;
+            if (producers[id] != 1) continue;
+
+            int rule = producedBy[id];
+            int input = ruleInputs[rule];
+            try {
+                long baseAmount = Math.multiplyExact(materialBaseAmounts[input], ruleInputAmounts[rule]);
+                long units = Math.multiplyExact(materialUnits[input], ruleOutputAmounts[rule]);
+                long divisor = gcd(baseAmount, units);
+                materialBases[id] = materialBases[input];
+                materialBaseAmounts[id] = baseAmount / divisor;
+                materialUnits[id] = units / divisor;
+            } catch (ArithmeticException e) {
+                // Absurdly long chain, treat the material as a base of its own
+            }
+        }
+        chainBases = new int[ruleCount];
+        chainBaseAmounts = new long[ruleCount];
+        chainOutputAmounts = new long[ruleCount];
+        for (int rule = 0; rule < ruleCount; rule++) {
+            int output = ruleOutputs[rule];
+            chainBases[rule] = producers[output] == 1 ? materialBases[output] : ruleInputs[rule];
+            chainBaseAmounts[rule] = producers[output] == 1 ? materialBaseAmounts[output] : ruleInputAmounts[rule];
+            chainOutputAmounts[rule] = producers[output] == 1 ? materialUnits[output] : ruleOutputAmounts[rule];
+        }
+    }
+
+    // Tarjan's algorithm, iterative so long chains can't overflow the stack
+    private static int[] stronglyConnectedComponents(List<List<Integer>> edges) {
+        int size = edges.size();
+        int[] components = new int[size];
+        int[] order = new int[size];
+        int[] lowLinks = new int[size];
+        int[] nextEdge = new int[size];
+        boolean[] onStack = new boolean[size];
+        Arrays.fill(order, -1);
+        Deque<Integer> stack = new ArrayDeque<>();
+        Deque<Integer> callStack = new ArrayDeque<>();
+        int counter = 0;
+        int componentCount = 0;
+
+        for (int start = 0; start < size; start++) {
+            if (order[start] != -1) continue;
+
+            callStack.push(start);
+            while (!callStack.isEmpty()) {
+                int node = callStack.peek();
+                if (nextEdge[node] == 0 && order[node] == -1) {
+                    order[node] = lowLinks[node] = counter++;
+                    stack.push(node);
+                    onStack[node] = true;
+                }
+
+                if (nextEdge[node] < edges.get(node).size()) {
+                    int next = edges.get(node).get(nextEdge[node]++);
+                    if (order[next] == -1) {
+                        callStack.push(next);
+                    } else if (onStack[next]) {
+                        lowLinks[node] = Math.min(lowLinks[node], order[next]);
+                    }
+                    continue;
+                }
+
+                callStack.pop();
+                if (!callStack.isEmpty()) {
+                    int parent = callStack.peek();
+                    lowLinks[parent] = Math.min(lowLinks[parent], lowLinks[node]);
+                }
+                if (lowLinks[node] == order[node]) {
+                    int member;
+                    do {
+                        member = stack.pop();
+                        onStack[member] = false;
+                        components[member] = componentCount;
+                    } while (member != node);
+                    componentCount++;
+                }
+            }
+        }
+        return components;
+    }
+
+    private String cycleMaterials(int[] components, int material, List<Integer> seen) {
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < components.length; i++) {
+            if (components[i] != components[material]) continue;
+            if (names.length() > 0) names.append(", ");
+            names.append(materialTable.name(seen.get(i)));
+        }
+        return names.toString();
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private boolean isMaterial(int key) {
+        return key >= 0 && key < denseIdByKey.length;
+    }
+
+    public MaterialTable materialTable() {
+        return materialTable;
+    }
+
+    // Dense id of the material key, or OTHER when no rule uses it
+    public int denseId(int materialKey) {
+        return denseIdByKey[materialKey];
+    }
+
+    public int materialCount() {
+        return materialKeys.length;
+    }
+
+    public int materialKey(int id) {
+        return materialKeys[id];
+    }
+
+    public int maxStackSize(int id) {
+        return maxStackSizes[id];
+    }
+
+    public int ruleCount() {
+        return ruleIds.length;
+    }
+
+    public String ruleId(int rule) {
+        return ruleIds[rule];
+    }
+
+    // Index of the rule with the given id, or -1 when it was rejected or doesn't exist
+    public int ruleIndex(String ruleId) {
+        Integer rule = rulesById.get(ruleId);
+        return rule == null ? -1 : rule;
+    }
+
+    public int input(int rule) {
+        return ruleInputs[rule];
+    }
+
+    public int inputAmount(int rule) {
+        return ruleInputAmounts[rule];
+    }
+
+    public int output(int rule) {
+        return ruleOutputs[rule];
+    }
+
+    public int outputAmount(int rule) {
+        return ruleOutputAmounts[rule];
+    }
+
+    // Rules consuming the given material, empty when there are none
+    public int[] rulesFor(int id) {
+        return rulesByInput[id];
+    }
+
+    // First material of the chain that ends in this rule, the rule's own input when it doesn't continue a chain
+    public int chainBase(int rule) {
+        return chainBases[rule];
+    }
+
+    // chainBaseAmount(rule) of chainBase(rule) compress into chainOutputAmount(rule) of the rule's output
+    public long chainBaseAmount(int rule) {
+        return chainBaseAmounts[rule];
+    }
+
+    public long chainOutputAmount(int rule) {
+        return chainOutputAmounts[rule];
+    }
+
+    // Why rules were left out of the index, empty when every rule compiled
+    public List<String> problems() {
+        return problems;
+    }
+}
@@ -0,0 +1,61 @@
+package org.examplez.autocompressor.core;
+
+import java.util.Arrays;
+
+// The rules of a RuleIndex that may fire for one inventory, as a bitset over the rule indices. It also keeps
+// the input materials of those rules, so the engine skips materials none of them take without looking at
+// their rules at all. Never changed once built, it can be shared between threads.
+public final class RuleMask {
+
+    private final RuleIndex index;
+    private final long[] rules;
+    private final long[] inputs;
+    private final boolean empty;
+
+    // Takes ownership of the bitset
+    public RuleMask(RuleIndex index, long[] rules) {
+        this.index = index;
+        this.rules = rules;
+        this.inputs = new long[(index.materialCount() + 63) >> 6];
+
+        boolean empty = true;
+        for (int rule = 0; rule < index.ruleCount(); rule++) {
+            if (!isActive(rule)) continue;
+
+            int input = index.input(rule);
+            inputs[input >> 6] |= 1L << input;
+            empty = false;
+        }
+        this.empty = empty;
+    }
+
+    public static long[] newBitset(RuleIndex index) {
+        return new long[(index.ruleCount() + 63) >> 6];
+    }
+
+    public RuleIndex index() {
+        return index;
+    }
+
+    public boolean isActive(int rule) {
+        return (rules[rule >> 6] & (1L << rule)) != 0;
+    }
+
+    // Whether some active rule takes the material
+    public boolean takes(int material) {
+        return (inputs[material >> 6] & (1L << material)) != 0;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    // Same rules of the same index
+    public boolean sameAs(RuleMask other) {
+        return other != null && other.index == index && Arrays.equals(other.rules, rules);
+    }
+
+    long[] inputs() {
+        return inputs;
+    }
+}
@@ -0,0 +1,44 @@
+package org.examplez.autocompressor.core;
+
+import java.util.Arrays;
+
+// Array backed material table, for anything that runs without a server
+public final class SimpleMaterialTable implements MaterialTable {
+
+    private final String[] names;
+    private final int[] maxStackSizes;
+
+    public SimpleMaterialTable(String[] names, int[] maxStackSizes) {
+        if (names.length != maxStackSizes.length) {
+            throw new IllegalArgumentException("Every material needs a name and a max stack size");
+        }
+        this.names = names.clone();
+        this.maxStackSizes = maxStackSizes.clone();
+    }
+
+    // count materials named MATERIAL_0, MATERIAL_1, ... that all stack to maxStackSize
+    public static SimpleMaterialTable uniform(int count, int maxStackSize) {
+        String[] names = new String[count];
+        for (int key = 0; key < count; key++) {
+            names[key] = "MATERIAL_" + key;
+        }
+        int[] maxStackSizes = new int[count];
+        Arrays.fill(maxStackSizes, maxStackSize);
+        return new SimpleMaterialTable(names, maxStackSizes);
+    }
+
+    @Override
+    public int size() {
+        return names.length;
+    }
+
+    @Override
+    public int maxStackSize(int key) {
+        return maxStackSizes[key];
+    }
+
+    @Override
+    public String name(int key) {
+        return names[key];
+    }
+}
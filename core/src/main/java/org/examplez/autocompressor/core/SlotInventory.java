@@ -0,0 +1,20 @@
+package org.examplez.autocompressor.core;
+
+// Read access to an inventory as an array of slots holding a material key and an amount
+public interface SlotInventory {
+
+    int EMPTY = -1;
+
+    int size();
+
+    // Output is only ever placed in the first storageSize() slots
+    int storageSize();
+
+    // Material key of the slot, EMPTY when there is nothing in it
+    int materialKey(int slot);
+
+    int amount(int slot);
+
+    // Whether output of the same material may be stacked onto this slot
+    boolean isPlain(int slot);
+}
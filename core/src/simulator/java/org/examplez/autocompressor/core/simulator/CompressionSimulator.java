@@ -0,0 +1,349 @@
+package org.examplez.autocompressor.core.simulator;
+
+import org.examplez.autocompressor.core.ArraySlotInventory;
+import org.examplez.autocompressor.core.CompressionEngine;
+import org.examplez.autocompressor.core.CompressionPlan;
+import org.examplez.autocompressor.core.InventorySnapshot;
+import org.examplez.autocompressor.core.OverflowPolicy;
+import org.examplez.autocompressor.core.RuleDefinition;
+import org.examplez.autocompressor.core.RuleIndex;
+import org.examplez.autocompressor.core.SimpleMaterialTable;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+// Replays synthetic mining sessions for many virtual players against a rule set, without a server.
+// Every simulated second each player picks up a few drops and gets one compression pass. The passes are
+// timed and every plan is checked: the slot changes must match the rules that fired, no stack may go over
+// its limit and a pass that wasn't short of room must leave nothing else to compress.
+//
+// Run with ./gradlew :core:simulate -PsimArgs="--players=5000 --seconds=600 --rules=path/to/config.yml"
+public final class CompressionSimulator {
+
+    private static final int INVENTORY_SIZE = 41;
+    private static final int STORAGE_SIZE = 36;
+    private static final int FILLER_MATERIALS = 200;
+    // Without a server there is no way to know real stack sizes, everything stacks to 64
+    private static final int MAX_STACK_SIZE = 64;
+    private static final int MAX_REPORTED_VIOLATIONS = 10;
+
+    private final Options options;
+    private final Map<String, Integer> materialKeys = new LinkedHashMap<>();
+    private final List<RuleDefinition> rules = new ArrayList<>();
+    private SimpleMaterialTable materials;
+    private RuleIndex index;
+    private int[] minedMaterials;
+    private int[] fillerMaterials;
+
+    private long passes;
+    private long compressingPasses;
+    private long consumed;
+    private long produced;
+    private long overflowed;
+    private long pickupsLost;
+    private long violations;
+    private long[] passTimes;
+    private int passTimeCount;
+
+    private CompressionSimulator(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws IOException {
+        CompressionSimulator simulator = new CompressionSimulator(Options.parse(args));
+        simulator.loadRules();
+        simulator.run();
+        simulator.report();
+
+        if (simulator.violations > 0) {
+            System.exit(1);
+        }
+    }
+
+    private void loadRules() throws IOException {
+        if (options.rulesFile != null) {
+            readRules(options.rulesFile);
+        } else {
+            syntheticRules();
+        }
+
+        String[] names = new String[materialKeys.size() + FILLER_MATERIALS];
+        for (Map.Entry<String, Integer> entry : materialKeys.entrySet()) {
+            names[entry.getValue()] = entry.getKey();
+        }
+        fillerMaterials = new int[FILLER_MATERIALS];
+        for (int i = 0; i < FILLER_MATERIALS; i++) {
+            fillerMaterials[i] = materialKeys.size() + i;
+            names[fillerMaterials[i]] = "FILLER_" + i;
+        }
+        int[] maxStackSizes = new int[names.length];
+        Arrays.fill(maxStackSizes, MAX_STACK_SIZE);
+        materials = new SimpleMaterialTable(names, maxStackSizes);
+        index = new RuleIndex(rules, materials);
+
+        for (String problem : index.problems()) {
+            System.out.println("Rule disabled: " + problem);
+        }
+
+        // Players mine the start of every chain: inputs that no rule produces
+        Set<Integer> outputs = new HashSet<>();
+        for (RuleDefinition rule : rules) {
+            outputs.add(rule.getOutputMaterial());
+        }
+        Set<Integer> mined = new HashSet<>();
+        for (RuleDefinition rule : rules) {
+            if (!outputs.contains(rule.getInputMaterial())) {
+                mined.add(rule.getInputMaterial());
+            }
+        }
+        minedMaterials = mined.stream().mapToInt(Integer::intValue).sorted().toArray();
+        if (minedMaterials.length == 0) {
+            throw new IllegalArgumentException("The rule set has no material to start compressing from");
+        }
+    }
+
+    // 20 two-step chains (ore -> block -> compressed block) and 20 single rules, 60 rules in total
+    private void syntheticRules() {
+        for (int i = 0; i < 20; i++) {
+            rules.add(new RuleDefinition("ORE_" + i + "_TO_BLOCK_" + i, key("ORE_" + i), 9, key("BLOCK_" + i), 1));
+            rules.add(new RuleDefinition("BLOCK_" + i + "_TO_COMPRESSED_" + i, key("BLOCK_" + i), 9, key("COMPRESSED_" + i), 1));
+            rules.add(new RuleDefinition("DUST_" + i + "_TO_INGOT_" + i, key("DUST_" + i), 4, key("INGOT_" + i), 1));
+        }
+    }
+
+    // Reads the rules section of an AutoCompressor config.yml
+    @SuppressWarnings("unchecked")
+    private void readRules(Path file) throws IOException {
+        Map<String, Object> config;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            config = new Yaml().load(reader);
+        }
+        Object section = config == null ? null : config.get("rules");
+        if (!(section instanceof Map)) {
+            throw new IllegalArgumentException(file + " has no rules section");
+        }
+
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) section).entrySet()) {
+            Map<String, Object> rule = (Map<String, Object>) entry.getValue();
+            Map<String, Object> input = (Map<String, Object>) rule.get("input");
+            Map<String, Object> output = (Map<String, Object>) rule.get("output");
+            rules.add(new RuleDefinition(entry.getKey(),
+                    key(String.valueOf(input.get("material"))), ((Number) input.getOrDefault("amount", 0)).intValue(),
+                    key(String.valueOf(output.get("material"))), ((Number) output.getOrDefault("amount", 1)).intValue()));
+        }
+    }
+
+    private int key(String material) {
+        return materialKeys.computeIfAbsent(material, name -> materialKeys.size());
+    }
+
+    private void run() {
+        Random random = new Random(options.seed);
+        ArraySlotInventory[] players = new ArraySlotInventory[options.players];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new ArraySlotInventory(INVENTORY_SIZE, STORAGE_SIZE);
+        }
+        passTimes = new long[(int) Math.min((long) options.players * options.seconds, 1_000_000)];
+
+        long start = System.nanoTime();
+        for (int second = 0; second < options.seconds; second++) {
+            for (ArraySlotInventory inventory : players) {
+                mine(inventory, random);
+                compress(inventory, random);
+            }
+        }
+        options.wallNanos = System.nanoTime() - start;
+    }
+
+    // A second of mining: a few drops, mostly compressible, and emptying the inventory once it's nearly full
+    private void mine(ArraySlotInventory inventory, Random random) {
+        if (emptyStorageSlots(inventory) < 3) {
+            inventory.clear();
+        }
+
+        int drops = 1 + random.nextInt(4);
+        for (int i = 0; i < drops; i++) {
+            int material = random.nextInt(10) < 7
+                    ? minedMaterials[random.nextInt(minedMaterials.length)]
+                    : fillerMaterials[random.nextInt(fillerMaterials.length)];
+            pickupsLost += inventory.add(material, 1 + random.nextInt(4), MAX_STACK_SIZE);
+        }
+    }
+
+    private void compress(ArraySlotInventory inventory, Random random) {
+        int[] before = totals(inventory);
+
+        long start = System.nanoTime();
+        InventorySnapshot snapshot = InventorySnapshot.of(index, inventory);
+        CompressionPlan plan = CompressionEngine.compress(index, snapshot, options.policy);
+        long elapsed = System.nanoTime() - start;
+
+        passes++;
+        recordPassTime(elapsed, random);
+        if (plan == null) return;
+
+        compressingPasses++;
+        if (!inventory.apply(plan)) {
+            violation("a plan made from the current inventory was taken for stale");
+            return;
+        }
+        verify(inventory, plan, before);
+    }
+
+    private void verify(ArraySlotInventory inventory, CompressionPlan plan, int[] before) {
+        int[] after = totals(inventory);
+
+        // What the rules that fired say should have changed
+        int[] expected = new int[index.materialCount()];
+        for (int rule = 0; rule < index.ruleCount(); rule++) {
+            int batches = plan.batches(rule);
+            expected[index.input(rule)] -= batches * index.inputAmount(rule);
+            expected[index.output(rule)] += batches * index.outputAmount(rule);
+            consumed += (long) batches * index.inputAmount(rule);
+            produced += (long) batches * index.outputAmount(rule);
+        }
+
+        for (int key = 0; key < materials.size(); key++) {
+            int id = index.denseId(key);
+            int change = after[key] - before[key];
+            if (id < 0) {
+                if (change != 0) violation("material " + materials.name(key) + " changed but no rule uses it");
+                continue;
+            }
+
+            overflowed += plan.overflow(id);
+            if (expected[id] != plan.change(id)) {
+                violation(materials.name(key) + ": rules account for " + expected[id] + " but the plan changes it by " + plan.change(id));
+            }
+            if (change != plan.change(id) - plan.overflow(id)) {
+                violation(materials.name(key) + ": inventory changed by " + change + ", plan says " + (plan.change(id) - plan.overflow(id)));
+            }
+        }
+
+        for (int slot = 0; slot < inventory.size(); slot++) {
+            int material = inventory.materialKey(slot);
+            if (material == ArraySlotInventory.EMPTY) continue;
+
+            if (inventory.amount(slot) > materials.maxStackSize(material)) {
+                violation("slot " + slot + " holds " + inventory.amount(slot) + " " + materials.name(material));
+            }
+            if (slot >= inventory.storageSize() && plan.snapshot().material(slot) != index.denseId(material)) {
+                violation("output placed outside the storage slots in slot " + slot);
+            }
+        }
+
+        if (!plan.isLimited() && CompressionEngine.compress(index, InventorySnapshot.of(index, inventory), options.policy) != null) {
+            violation("a second pass still found something to compress");
+        }
+    }
+
+    private int[] totals(ArraySlotInventory inventory) {
+        int[] totals = new int[materials.size()];
+        for (int slot = 0; slot < inventory.size(); slot++) {
+            if (inventory.materialKey(slot) != ArraySlotInventory.EMPTY) {
+                totals[inventory.materialKey(slot)] += inventory.amount(slot);
+            }
+        }
+        return totals;
+    }
+
+    private static int emptyStorageSlots(ArraySlotInventory inventory) {
+        int empty = 0;
+        for (int slot = 0; slot < inventory.storageSize(); slot++) {
+            if (inventory.materialKey(slot) == ArraySlotInventory.EMPTY) empty++;
+        }
+        return empty;
+    }
+
+    // Reservoir sample, so long runs keep a fixed amount of timing data
+    private void recordPassTime(long nanos, Random random) {
+        if (passTimeCount < passTimes.length) {
+            passTimes[passTimeCount++] = nanos;
+        } else {
+            long slot = (long) (random.nextDouble() * passes);
+            if (slot < passTimes.length) {
+                passTimes[(int) slot] = nanos;
+            }
+        }
+    }
+
+    private void violation(String message) {
+        if (violations++ < MAX_REPORTED_VIOLATIONS) {
+            System.out.println("VIOLATION: " + message);
+        }
+    }
+
+    private void report() {
+        long[] times = Arrays.copyOf(passTimes, passTimeCount);
+        Arrays.sort(times);
+        long engineNanos = 0;
+        for (long time : times) {
+            engineNanos += time;
+        }
+        double sampledShare = times.length == 0 ? 1 : (double) times.length / passes;
+        double estimatedEngineSeconds = engineNanos / sampledShare / 1e9;
+
+        System.out.printf("Simulated %d players for %d seconds, %d active rules, %s overflow%n",
+                options.players, options.seconds, index.ruleCount(), options.policy.name().toLowerCase());
+        System.out.printf("Passes: %d, %d of them compressed something%n", passes, compressingPasses);
+        System.out.printf("Engine: %.0f passes/s, per pass p50 %d ns, p99 %d ns, max %d ns%n",
+                passes / Math.max(estimatedEngineSeconds, 1e-9), percentile(times, 0.50), percentile(times, 0.99),
+                times.length == 0 ? 0 : times[times.length - 1]);
+        System.out.printf("Wall time: %.1f s, including mining and verification%n", options.wallNanos / 1e9);
+        System.out.printf("Items: %d consumed, %d produced, %d output overflowed, %d pickups didn't fit%n",
+                consumed, produced, overflowed, pickupsLost);
+        System.out.printf("Correctness: %d violations%n", violations);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(percentile * (sorted.length - 1)))];
+    }
+
+    private static final class Options {
+        private static final Set<String> NAMES = Set.of("players", "seconds", "seed", "rules", "policy");
+
+        private int players = 5000;
+        private int seconds = 600;
+        private long seed = 1;
+        private Path rulesFile;
+        private OverflowPolicy policy = OverflowPolicy.PARTIAL;
+        private long wallNanos;
+
+        private static Options parse(String[] args) {
+            Options options = new Options();
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Expected --name=value, got " + arg);
+                }
+                String name = arg.substring(2, arg.indexOf('='));
+                if (!NAMES.contains(name)) {
+                    // A typo would otherwise quietly run the default workload
+                    throw new IllegalArgumentException("Unknown option --" + name + ", expected one of " + NAMES);
+                }
+                values.put(name, arg.substring(arg.indexOf('=') + 1));
+            }
+
+            if (values.containsKey("players")) options.players = Integer.parseInt(values.get("players"));
+            if (values.containsKey("seconds")) options.seconds = Integer.parseInt(values.get("seconds"));
+            if (values.containsKey("seed")) options.seed = Long.parseLong(values.get("seed"));
+            if (values.containsKey("rules")) options.rulesFile = Path.of(values.get("rules"));
+            if (values.containsKey("policy")) options.policy = OverflowPolicy.valueOf(values.get("policy").toUpperCase());
+            return options;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.examplez.autocompressor.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionEngineTest {
+
+    private static final int COBBLESTONE = 0;
+    private static final int COMPRESSED = 1;
+    private static final int DOUBLE_COMPRESSED = 2;
+    private static final int PEARL = 3;
+    private static final int SHARD = 4;
+    private static final int STICK = 5;
+
+    // Pearls stack to 16, everything else to 64
+    private static final MaterialTable MATERIALS = new SimpleMaterialTable(
+            new String[]{"COBBLESTONE", "COMPRESSED", "DOUBLE_COMPRESSED", "PEARL", "SHARD", "STICK"},
+            new int[]{64, 64, 64, 16, 64, 64});
+
+    private static final RuleIndex INDEX = new RuleIndex(List.of(
+            new RuleDefinition("cobblestone", COBBLESTONE, 9, COMPRESSED, 1),
+            new RuleDefinition("compressed", COMPRESSED, 9, DOUBLE_COMPRESSED, 1),
+            new RuleDefinition("shards", SHARD, 1, PEARL, 1)), MATERIALS);
+
+    @Test
+    void compressesChainsInOnePass() {
+        ArraySlotInventory inventory = new ArraySlotInventory(4, 4);
+        inventory.set(0, COBBLESTONE, 64, true);
+        inventory.set(1, COBBLESTONE, 17, true);
+
+        CompressionPlan plan = plan(inventory, OverflowPolicy.PARTIAL);
+        assertNotNull(plan);
+        assertTrue(inventory.apply(plan));
+
+        assertEquals(-81, plan.change(INDEX.denseId(COBBLESTONE)));
+        assertEquals(0, plan.change(INDEX.denseId(COMPRESSED)));
+        assertEquals(1, plan.change(INDEX.denseId(DOUBLE_COMPRESSED)));
+        assertEquals(DOUBLE_COMPRESSED, inventory.materialKey(0));
+        assertEquals(1, inventory.amount(0));
+        assertEquals(SlotInventory.EMPTY, inventory.materialKey(1));
+    }
+
+    @Test
+    void returnsNullWhenNothingCompresses() {
+        ArraySlotInventory inventory = new ArraySlotInventory(4, 4);
+        inventory.set(0, COBBLESTONE, 8, true);
+        inventory.set(1, STICK, 64, true);
+
+        assertNull(plan(inventory, OverflowPolicy.PARTIAL));
+    }
+
+    @Test
+    void keepsOutputWithinItsStackSize() {
+        ArraySlotInventory inventory = new ArraySlotInventory(4, 4);
+        inventory.set(0, SHARD, 40, true);
+
+        CompressionPlan plan = plan(inventory, OverflowPolicy.PARTIAL);
+        assertTrue(inventory.apply(plan));
+
+        assertEquals(PEARL, inventory.materialKey(0));
+        assertEquals(16, inventory.amount(0));
+        assertEquals(PEARL, inventory.materialKey(1));
+        assertEquals(16, inventory.amount(1));
+        assertEquals(PEARL, inventory.materialKey(2));
+        assertEquals(8, inventory.amount(2));
+    }
+
+    @Test
+    void doesNotStackOutputOntoItemsWithMeta() {
+        ArraySlotInventory inventory = new ArraySlotInventory(4, 4);
+        inventory.set(0, PEARL, 1, false);
+        inventory.set(1, SHARD, 5, true);
+
+        CompressionPlan plan = plan(inventory, OverflowPolicy.PARTIAL);
+        assertTrue(inventory.apply(plan));
+
+        assertEquals(1, inventory.amount(0));
+        assertFalse(inventory.isPlain(0));
+        assertEquals(PEARL, inventory.materialKey(1));
+        assertEquals(5, inventory.amount(1));
+    }
+
+    @Test
+    void takesInputFromEverySlotButOnlyPlacesOutputInStorage() {
+        // Two storage slots, the third stands in for the off hand
+        ArraySlotInventory inventory = new ArraySlotInventory(3, 2);
+        inventory.set(0, STICK, 64, true);
+        inventory.set(1, STICK, 64, true);
+        inventory.set(2, SHARD, 1, true);
+
+        // The shard's own slot frees up, but it's outside the storage
+        assertNull(plan(inventory, OverflowPolicy.PARTIAL));
+
+        inventory.set(1, SHARD, 3, true);
+        CompressionPlan plan = plan(inventory, OverflowPolicy.PARTIAL);
+        assertTrue(inventory.apply(plan));
+
+        assertEquals(PEARL, inventory.materialKey(1));
+        assertEquals(4, inventory.amount(1));
+        assertEquals(SlotInventory.EMPTY, inventory.materialKey(2));
+    }
+
+    @Test
+    void partialCompressesWhatFits() {
+        CompressionPlan plan = plan(overflowingInventory(), OverflowPolicy.PARTIAL);
+
+        // Taking fewer than all 48 shards leaves their slot occupied, so only the empty slot takes pearls
+        assertNotNull(plan);
+        assertTrue(plan.isLimited());
+        assertEquals(16, plan.batches(INDEX.ruleIndex("shards")));
+        assertEquals(16, plan.change(INDEX.denseId(PEARL)));
+        assertEquals(0, plan.overflow(INDEX.denseId(PEARL)));
+    }
+
+    @Test
+    void holdCompressesNothingUnlessAllOfItFits() {
+        assertNull(plan(overflowingInventory(), OverflowPolicy.HOLD));
+
+        ArraySlotInventory inventory = overflowingInventory();
+        inventory.set(0, SHARD, 16, true);
+        CompressionPlan plan = plan(inventory, OverflowPolicy.HOLD);
+        assertNotNull(plan);
+        assertFalse(plan.isLimited());
+        assertEquals(16, plan.change(INDEX.denseId(PEARL)));
+    }
+
+    @Test
+    void dropCompressesEverythingAndReportsTheOverflow() {
+        ArraySlotInventory inventory = overflowingInventory();
+        CompressionPlan plan = plan(inventory, OverflowPolicy.DROP);
+
+        assertNotNull(plan);
+        assertFalse(plan.isLimited());
+        assertEquals(48, plan.batches(INDEX.ruleIndex("shards")));
+        assertEquals(48, plan.change(INDEX.denseId(PEARL)));
+        assertEquals(16, plan.overflow(INDEX.denseId(PEARL)));
+
+        assertTrue(inventory.apply(plan));
+        assertEquals(PEARL, inventory.materialKey(0));
+        assertEquals(16, inventory.amount(0));
+        assertEquals(PEARL, inventory.materialKey(2));
+        assertEquals(16, inventory.amount(2));
+    }
+
+    @Test
+    void onlyFiresRulesInTheMask() {
+        ArraySlotInventory inventory = new ArraySlotInventory(4, 4);
+        inventory.set(0, COBBLESTONE, 9, true);
+        inventory.set(1, SHARD, 1, true);
+
+        long[] rules = RuleMask.newBitset(INDEX);
+        int shards = INDEX.ruleIndex("shards");
+        rules[shards >> 6] |= 1L << shards;
+        InventorySnapshot snapshot = InventorySnapshot.of(INDEX, inventory);
+        snapshot.restrictTo(new RuleMask(INDEX, rules));
+        CompressionPlan plan = CompressionEngine.compress(INDEX, snapshot, OverflowPolicy.PARTIAL);
+
+        assertNotNull(plan);
+        assertEquals(0, plan.change(INDEX.denseId(COBBLESTONE)));
+        assertEquals(1, plan.change(INDEX.denseId(PEARL)));
+    }
+
+    // 48 shards for 48 pearls, which stack to 16: the shards' own slot and one empty slot hold 32 of them
+    private static ArraySlotInventory overflowingInventory() {
+        ArraySlotInventory inventory = new ArraySlotInventory(3, 3);
+        inventory.set(0, SHARD, 48, true);
+        inventory.set(1, STICK, 64, true);
+        return inventory;
+    }
+
+    private static CompressionPlan plan(SlotInventory inventory, OverflowPolicy policy) {
+        return CompressionEngine.compress(INDEX, InventorySnapshot.of(INDEX, inventory), policy);
+    }
+}
@@ -0,0 +1,92 @@
+package org.examplez.autocompressor.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionPlanTest {
+
+    private static final int COBBLESTONE = 0;
+    private static final int COMPRESSED = 1;
+    private static final int STICK = 2;
+    private static final int DIRT = 3;
+
+    private static final RuleIndex INDEX = new RuleIndex(List.of(
+            new RuleDefinition("cobblestone", COBBLESTONE, 9, COMPRESSED, 1)), SimpleMaterialTable.uniform(4, 64));
+
+    @Test
+    void appliesToTheInventoryItWasMadeFor() {
+        ArraySlotInventory inventory = inventory();
+        CompressionPlan plan = plan(inventory);
+
+        assertTrue(plan.matches(inventory));
+        assertTrue(inventory.apply(plan));
+        assertEquals(COMPRESSED, inventory.materialKey(0));
+    }
+
+    @Test
+    void isStaleOnceARuleMaterialChanges() {
+        ArraySlotInventory inventory = inventory();
+        CompressionPlan plan = plan(inventory);
+
+        inventory.set(0, COBBLESTONE, 5, true);
+        assertFalse(plan.matches(inventory));
+        assertFalse(inventory.apply(plan));
+        // Left alone
+        assertEquals(COBBLESTONE, inventory.materialKey(0));
+        assertEquals(5, inventory.amount(0));
+    }
+
+    @Test
+    void isStaleOnceAnEmptySlotFillsUp() {
+        ArraySlotInventory inventory = inventory();
+        CompressionPlan plan = plan(inventory);
+
+        // The plan may want to put output there
+        inventory.set(2, DIRT, 1, true);
+        assertFalse(inventory.apply(plan));
+    }
+
+    @Test
+    void isStaleOnceAnOccupiedSlotEmpties() {
+        ArraySlotInventory inventory = inventory();
+        CompressionPlan plan = plan(inventory);
+
+        inventory.set(1, SlotInventory.EMPTY, 0, false);
+        assertFalse(inventory.apply(plan));
+    }
+
+    @Test
+    void ignoresChangesToItemsNoRuleUses() {
+        ArraySlotInventory inventory = inventory();
+        CompressionPlan plan = plan(inventory);
+
+        inventory.set(1, DIRT, 3, true);
+        assertTrue(inventory.apply(plan));
+        assertEquals(DIRT, inventory.materialKey(1));
+    }
+
+    @Test
+    void isStaleForAnInventoryOfAnotherSize() {
+        CompressionPlan plan = plan(inventory());
+        assertFalse(plan.matches(new ArraySlotInventory(4, 4)));
+    }
+
+    private static ArraySlotInventory inventory() {
+        ArraySlotInventory inventory = new ArraySlotInventory(3, 3);
+        inventory.set(0, COBBLESTONE, 9, true);
+        inventory.set(1, STICK, 64, true);
+        return inventory;
+    }
+
+    private static CompressionPlan plan(SlotInventory inventory) {
+        CompressionPlan plan = CompressionEngine.compress(INDEX, InventorySnapshot.of(INDEX, inventory), OverflowPolicy.PARTIAL);
+        assertNotNull(plan);
+        return plan;
+    }
+}
@@ -0,0 +1,74 @@
+package org.examplez.autocompressor.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuleIndexTest {
+
+    private static final int COBBLESTONE = 0;
+    private static final int COMPRESSED = 1;
+    private static final int DOUBLE_COMPRESSED = 2;
+    private static final int DIRT = 3;
+    private static final int GRAVEL = 4;
+
+    private static final MaterialTable MATERIALS = SimpleMaterialTable.uniform(8, 64);
+
+    @Test
+    void numbersChainMaterialsInputFirst() {
+        // Listed last link first, and with ids that sort the same way
+        RuleIndex index = new RuleIndex(List.of(
+                new RuleDefinition("a_compressed", COMPRESSED, 9, DOUBLE_COMPRESSED, 1),
+                new RuleDefinition("b_cobblestone", COBBLESTONE, 9, COMPRESSED, 1)), MATERIALS);
+
+        assertTrue(index.problems().isEmpty());
+        assertTrue(index.denseId(COBBLESTONE) < index.denseId(COMPRESSED));
+        assertTrue(index.denseId(COMPRESSED) < index.denseId(DOUBLE_COMPRESSED));
+        assertTrue(index.ruleIndex("b_cobblestone") < index.ruleIndex("a_compressed"));
+        for (int rule = 0; rule < index.ruleCount(); rule++) {
+            assertTrue(index.input(rule) < index.output(rule));
+        }
+    }
+
+    @Test
+    void followsChainsToTheirStart() {
+        RuleIndex index = new RuleIndex(List.of(
+                new RuleDefinition("cobblestone", COBBLESTONE, 9, COMPRESSED, 1),
+                new RuleDefinition("compressed", COMPRESSED, 9, DOUBLE_COMPRESSED, 1)), MATERIALS);
+
+        int rule = index.ruleIndex("compressed");
+        assertEquals(index.denseId(COBBLESTONE), index.chainBase(rule));
+        assertEquals(81, index.chainBaseAmount(rule));
+        assertEquals(1, index.chainOutputAmount(rule));
+    }
+
+    @Test
+    void rejectsCycles() {
+        RuleIndex index = new RuleIndex(List.of(
+                new RuleDefinition("dirt_to_gravel", DIRT, 4, GRAVEL, 1),
+                new RuleDefinition("gravel_to_dirt", GRAVEL, 1, DIRT, 4),
+                new RuleDefinition("cobblestone", COBBLESTONE, 9, COMPRESSED, 1)), MATERIALS);
+
+        assertEquals(2, index.problems().size());
+        for (String problem : index.problems()) {
+            assertTrue(problem.contains("cycle"), problem);
+        }
+        assertEquals(-1, index.ruleIndex("dirt_to_gravel"));
+        assertEquals(-1, index.ruleIndex("gravel_to_dirt"));
+        assertEquals(1, index.ruleCount());
+        assertTrue(index.ruleIndex("cobblestone") >= 0);
+    }
+
+    @Test
+    void rejectsRulesWithoutAmounts() {
+        RuleIndex index = new RuleIndex(List.of(
+                new RuleDefinition("nothing_in", COBBLESTONE, 0, COMPRESSED, 1),
+                new RuleDefinition("nothing_out", DIRT, 9, GRAVEL, 0)), MATERIALS);
+
+        assertEquals(2, index.problems().size());
+        assertEquals(0, index.ruleCount());
+    }
+}
@@ -0,0 +1,372 @@
+package org.examplez.autocompressor.loadtest;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Item;
+import org.bukkit.event.Event;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockDropItemEvent;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.inventory.ClickType;
+import org.bukkit.event.inventory.InventoryAction;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.inventory.InventoryView;
+import org.bukkit.inventory.ItemStack;
+import org.examplez.autocompressor.AutoCompressor;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+import org.mockbukkit.mockbukkit.plugin.PluginManagerMock;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+// Runs the plugin itself, listeners and timers, on a MockBukkit server with hundreds of scripted players
+// and times every tick. Each tick some players mine a block and pick up what it drops, some pick up loose
+// items, and now and then one opens the menu, pages through the rule list and clicks in their own
+// inventory. Only the plugin's share of a tick is timed: dispatching the scripted events and commands to
+// it and the server tick that runs its tasks. Making up the traffic, spawning items and filling
+// inventories is MockBukkit's work and stays out of the numbers.
+// The p99 tick time is compared with the stored baseline and the run fails when it's more than the
+// tolerance above it, or when there is no baseline. Timings depend on the machine, so the baseline is
+// recorded on the one running the gate with --update-baseline=true and committed.
+//
+// Run with ./gradlew loadTest -PloadTestArgs="--players=300 --ticks=2400"
+public final class LoadTest {
+
+    // What mining each block gives, all of it compressed by the default rules
+    private static final Material[] BLOCKS = {Material.STONE, Material.IRON_ORE, Material.GOLD_ORE};
+    private static final Material[] DROPS = {Material.COBBLESTONE, Material.IRON_INGOT, Material.GOLD_INGOT};
+    // Loose items nothing compresses
+    private static final Material[] FILLER = {Material.DIRT, Material.GRAVEL, Material.OAK_LOG, Material.STRING, Material.BONE};
+    // Main menu: the rule list button, then the rule list's next page button
+    private static final int LIST_RULES_SLOT = 15;
+    private static final int NEXT_PAGE_SLOT = 53;
+
+    private final Options options;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private ServerMock server;
+    private PluginManagerMock events;
+    private World world;
+    private PlayerMock[] players;
+    private int[] menuSteps;
+
+    private long[] tickTimes;
+    private long allocated;
+    private long harnessNanos;
+    // The plugin's time and allocations in the current tick, and where the running measurement started
+    private long tickNanos;
+    private long tickAllocated;
+    private long measureStart;
+    private long measureAllocated;
+    private long mined;
+    private long pickups;
+    private long menuClicks;
+    private long inventoriesEmptied;
+
+    private LoadTest(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws IOException {
+        LoadTest test = new LoadTest(Options.parse(args));
+        test.start();
+        try {
+            test.run();
+        } finally {
+            MockBukkit.unmock();
+        }
+        test.report();
+
+        if (!test.gate()) {
+            System.exit(1);
+        }
+    }
+
+    private void start() {
+        server = MockBukkit.mock();
+        events = server.getPluginManager();
+        world = server.addSimpleWorld("world");
+        MockBukkit.load(AutoCompressor.class);
+
+        players = new PlayerMock[options.players];
+        menuSteps = new int[options.players];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = server.addPlayer("player" + i);
+            players[i].teleport(new Location(world, i * 4 + 0.5, 65, 0.5));
+        }
+    }
+
+    private void run() {
+        Random random = new Random(options.seed);
+        tickTimes = new long[options.ticks];
+
+        for (int tick = 0; tick < options.warmupTicks + options.ticks; tick++) {
+            tickNanos = 0;
+            tickAllocated = 0;
+            long start = System.nanoTime();
+
+            for (int i = 0; i < players.length; i++) {
+                act(i, random);
+            }
+            begin();
+            server.getScheduler().performOneTick();
+            end();
+            // MockBukkit keeps every event for assertions, the test has no use for them
+            events.clearEvents();
+
+            if (tick >= options.warmupTicks) {
+                tickTimes[tick - options.warmupTicks] = tickNanos;
+                allocated += tickAllocated;
+                harnessNanos += System.nanoTime() - start - tickNanos;
+            }
+        }
+    }
+
+    // Around everything the plugin does, nothing of the harness in between
+    private void begin() {
+        measureAllocated = threads.getCurrentThreadAllocatedBytes();
+        measureStart = System.nanoTime();
+    }
+
+    private void end() {
+        tickNanos += System.nanoTime() - measureStart;
+        tickAllocated += threads.getCurrentThreadAllocatedBytes() - measureAllocated;
+    }
+
+    private void call(Event event) {
+        begin();
+        events.callEvent(event);
+        end();
+    }
+
+    private void act(int i, Random random) {
+        PlayerMock player = players[i];
+        if (menuSteps[i] > 0) {
+            menu(i);
+            return;
+        }
+
+        if (random.nextDouble() < options.mineChance) {
+            mine(player, random);
+        }
+        if (random.nextDouble() < options.pickupChance) {
+            Material material = random.nextInt(10) < 7
+                    ? DROPS[random.nextInt(DROPS.length)]
+                    : FILLER[random.nextInt(FILLER.length)];
+            pickUp(player, drop(player, new ItemStack(material, 1 + random.nextInt(4))));
+        }
+        if (random.nextDouble() < options.menuChance) {
+            menu(i);
+        }
+    }
+
+    // The block in front of the player, breaking it the way the server does
+    private void mine(PlayerMock player, Random random) {
+        int kind = random.nextInt(BLOCKS.length);
+        Location location = player.getLocation();
+        Block block = world.getBlockAt(location.getBlockX() + 1, location.getBlockY() - 1, location.getBlockZ());
+        block.setType(BLOCKS[kind]);
+
+        BlockBreakEvent breakEvent = new BlockBreakEvent(block, player);
+        call(breakEvent);
+        if (breakEvent.isCancelled()) return;
+
+        List<Item> items = new ArrayList<>();
+        items.add(drop(player, new ItemStack(DROPS[kind], 1 + random.nextInt(2))));
+        BlockDropItemEvent dropEvent = new BlockDropItemEvent(block, block.getState(), player, items);
+        block.setType(Material.AIR);
+        call(dropEvent);
+        mined++;
+        if (dropEvent.isCancelled()) return;
+
+        for (Item item : items) {
+            pickUp(player, item);
+        }
+    }
+
+    private Item drop(PlayerMock player, ItemStack stack) {
+        return world.dropItem(player.getLocation(), stack);
+    }
+
+    private void pickUp(PlayerMock player, Item item) {
+        EntityPickupItemEvent event = new EntityPickupItemEvent(player, item, 0);
+        call(event);
+        if (event.isCancelled()) {
+            item.remove();
+            return;
+        }
+
+        pickups++;
+        if (!player.getInventory().addItem(item.getItemStack()).isEmpty()) {
+            // Full, the player empties their inventory into a chest and carries on
+            player.getInventory().clear();
+            inventoriesEmptied++;
+        }
+        item.remove();
+    }
+
+    // One step a tick: open the menu, open the rule list, next page, click in their own inventory, close
+    private void menu(int i) {
+        PlayerMock player = players[i];
+        switch (menuSteps[i]++) {
+            case 0:
+                begin();
+                player.performCommand("autocompressor");
+                end();
+                break;
+            case 1:
+                click(player, LIST_RULES_SLOT);
+                break;
+            case 2:
+                click(player, NEXT_PAGE_SLOT);
+                break;
+            case 3:
+                click(player, player.getOpenInventory().getTopInventory().getSize() + 9);
+                break;
+            default:
+                begin();
+                player.closeInventory();
+                end();
+                menuSteps[i] = 0;
+        }
+    }
+
+    private void click(PlayerMock player, int rawSlot) {
+        InventoryView view = player.getOpenInventory();
+        call(new InventoryClickEvent(view, view.getSlotType(rawSlot), rawSlot, ClickType.LEFT, InventoryAction.PICKUP_ALL));
+        menuClicks++;
+    }
+
+    private void report() {
+        long[] times = tickTimes.clone();
+        Arrays.sort(times);
+        System.out.printf("Ran %d players for %d ticks after %d warmup ticks, seed %d%n",
+                options.players, options.ticks, options.warmupTicks, options.seed);
+        System.out.printf("Traffic: %d blocks mined, %d pickups, %d menu clicks, %d inventories emptied%n",
+                mined, pickups, menuClicks, inventoriesEmptied);
+        System.out.printf("Plugin time per tick: p50 %d ns, p90 %d ns, p99 %d ns, max %d ns%n",
+                percentile(times, 0.50), percentile(times, 0.90), percentile(times, 0.99), times[times.length - 1]);
+        System.out.printf("Plugin allocations: %d bytes in total, %d bytes per tick%n", allocated, allocated / options.ticks);
+        System.out.printf("Harness: %.1f s making up traffic, not counted%n", harnessNanos / 1e9);
+    }
+
+    // Returns false when the p99 tick time regressed past the baseline
+    private boolean gate() throws IOException {
+        long[] times = tickTimes.clone();
+        Arrays.sort(times);
+        long p99 = percentile(times, 0.99);
+
+        Properties current = new Properties();
+        current.setProperty("workload", options.workload());
+        current.setProperty("p99.nanos", Long.toString(p99));
+        current.setProperty("allocated.bytes-per-tick", Long.toString(allocated / options.ticks));
+
+        if (options.updateBaseline) {
+            Files.createDirectories(options.baseline.toAbsolutePath().getParent());
+            try (Writer writer = Files.newBufferedWriter(options.baseline, StandardCharsets.UTF_8)) {
+                current.store(writer, "Load test baseline, recorded with ./gradlew loadTest");
+            }
+            System.out.println("Recorded the baseline in " + options.baseline);
+            return true;
+        }
+
+        if (!Files.exists(options.baseline)) {
+            System.out.println("REGRESSION GATE: no baseline at " + options.baseline +
+                    ", record one with --update-baseline=true and commit it");
+            return false;
+        }
+
+        Properties baseline = new Properties();
+        try (Reader reader = Files.newBufferedReader(options.baseline, StandardCharsets.UTF_8)) {
+            baseline.load(reader);
+        }
+        if (!options.workload().equals(baseline.getProperty("workload"))) {
+            System.out.println("REGRESSION GATE: the baseline was recorded for " + baseline.getProperty("workload") +
+                    ", record it again for this workload with --update-baseline=true");
+            return false;
+        }
+
+        long baselineP99 = Long.parseLong(baseline.getProperty("p99.nanos"));
+        long limit = (long) (baselineP99 * (1 + options.tolerance));
+        System.out.printf("Baseline: p99 %d ns, %s bytes per tick, limit p99 %d ns%n",
+                baselineP99, baseline.getProperty("allocated.bytes-per-tick", "unrecorded"), limit);
+        if (p99 > limit) {
+            System.out.printf("REGRESSION GATE: p99 tick time %d ns is %.0f%% above the baseline%n",
+                    p99, (p99 - baselineP99) * 100.0 / baselineP99);
+            return false;
+        }
+        return true;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(percentile * (sorted.length - 1)))];
+    }
+
+    private static final class Options {
+        private static final Set<String> NAMES = Set.of("players", "ticks", "warmup-ticks", "seed", "mine-chance",
+                "pickup-chance", "menu-chance", "tolerance", "baseline", "update-baseline");
+
+        private int players = 300;
+        private int ticks = 2400;
+        private int warmupTicks = 600;
+        private long seed = 1;
+        private double mineChance = 0.25;
+        private double pickupChance = 0.1;
+        private double menuChance = 0.002;
+        private double tolerance = 0.25;
+        private Path baseline = Path.of("src/loadTest/baseline.properties");
+        private boolean updateBaseline;
+
+        // Runs are only compared with a baseline of the same traffic
+        private String workload() {
+            return "players=" + players + " ticks=" + ticks + " seed=" + seed +
+                    " mine=" + mineChance + " pickup=" + pickupChance + " menu=" + menuChance;
+        }
+
+        private static Options parse(String[] args) {
+            Options options = new Options();
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Expected --name=value, got " + arg);
+                }
+                String name = arg.substring(2, arg.indexOf('='));
+                if (!NAMES.contains(name)) {
+                    // A typo would otherwise quietly change what the gate checks
+                    throw new IllegalArgumentException("Unknown option --" + name + ", expected one of " + NAMES);
+                }
+                values.put(name, arg.substring(arg.indexOf('=') + 1));
+            }
+
+            if (values.containsKey("players")) options.players = Integer.parseInt(values.get("players"));
+            if (values.containsKey("ticks")) options.ticks = Math.max(1, Integer.parseInt(values.get("ticks")));
+            if (values.containsKey("warmup-ticks")) options.warmupTicks = Integer.parseInt(values.get("warmup-ticks"));
+            if (values.containsKey("seed")) options.seed = Long.parseLong(values.get("seed"));
+            if (values.containsKey("mine-chance")) options.mineChance = Double.parseDouble(values.get("mine-chance"));
+            if (values.containsKey("pickup-chance")) options.pickupChance = Double.parseDouble(values.get("pickup-chance"));
+            if (values.containsKey("menu-chance")) options.menuChance = Double.parseDouble(values.get("menu-chance"));
+            if (values.containsKey("tolerance")) options.tolerance = Double.parseDouble(values.get("tolerance"));
+            if (values.containsKey("baseline")) options.baseline = Path.of(values.get("baseline"));
+            if (values.containsKey("update-baseline")) options.updateBaseline = Boolean.parseBoolean(values.get("update-baseline"));
+            return options;
+        }
+    }
+}